@@ -0,0 +1,400 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.jcabi.log.Logger;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous access log writing records to a rolling file.
+ * <p>
+ * Records are put into bounded lock-free ring buffer and written to the
+ * file in batches by a single background thread, so request threads never
+ * do any I/O. When the buffer is full, records are either dropped and
+ * counted or the caller waits for free space, according to the policy.
+ * When the file grows over the size limit, it is renamed to `file.1`,
+ * previous `file.1` to `file.2` and so on, keeping several old files.
+ * The writer thread is started with the first record and stopped by
+ * {@link #close()}, which writes all buffered records.
+ * </p>
+ * @since 0.8
+ */
+public final class AccessLog implements AutoCloseable {
+
+    /**
+     * Max records written at once.
+     */
+    private static final int BATCH = 512;
+
+    /**
+     * Writer idle wait time in nanoseconds.
+     */
+    private static final long IDLE = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Log file.
+     */
+    private final Path file;
+
+    /**
+     * Records buffer.
+     */
+    private final Ring ring;
+
+    /**
+     * Policy when buffer is full.
+     */
+    private final Policy policy;
+
+    /**
+     * Max file size in bytes.
+     */
+    private final long limit;
+
+    /**
+     * Old files to keep.
+     */
+    private final int keep;
+
+    /**
+     * Whether the writer thread was started.
+     */
+    private final AtomicBoolean started;
+
+    /**
+     * Whether the log was closed.
+     */
+    private final AtomicBoolean closed;
+
+    /**
+     * Dropped records.
+     */
+    private final AtomicLong drops;
+
+    /**
+     * Written records.
+     */
+    private final AtomicLong writes;
+
+    /**
+     * Writer thread.
+     */
+    private final Thread writer;
+
+    /**
+     * Ctor with 10MB file size limit and five old files.
+     * @param file Log file
+     * @param capacity Buffer capacity, rounded up to power of two
+     * @param policy Policy when buffer is full
+     */
+    public AccessLog(final Path file, final int capacity, final Policy policy) {
+        this(file, capacity, policy, 10L * 1024 * 1024, 5);
+    }
+
+    /**
+     * Ctor.
+     * @param file Log file
+     * @param capacity Buffer capacity, rounded up to power of two
+     * @param policy Policy when buffer is full
+     * @param limit Max file size in bytes
+     * @param keep Old files to keep
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public AccessLog(final Path file, final int capacity, final Policy policy,
+        final long limit, final int keep) {
+        this.file = file;
+        this.ring = new Ring(capacity);
+        this.policy = policy;
+        this.limit = limit;
+        this.keep = keep;
+        this.started = new AtomicBoolean();
+        this.closed = new AtomicBoolean();
+        this.drops = new AtomicLong();
+        this.writes = new AtomicLong();
+        this.writer = new Thread(this::run, String.format("access-log-%s", file.getFileName()));
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Add record to the log.
+     * @param record Record line
+     * @return True if record was accepted, false if it was dropped
+     */
+    public boolean record(final String record) {
+        if (this.started.compareAndSet(false, true)) {
+            this.writer.start();
+        }
+        boolean res = !this.closed.get() && this.ring.offer(record);
+        if (!res && this.policy == Policy.BLOCK) {
+            while (!res && !this.closed.get()) {
+                LockSupport.parkNanos(AccessLog.IDLE / 10);
+                res = this.ring.offer(record);
+            }
+        }
+        if (!res) {
+            this.drops.incrementAndGet();
+        }
+        return res;
+    }
+
+    /**
+     * Records dropped because the buffer was full or the log was closed.
+     * @return Dropped records counter
+     */
+    public long dropped() {
+        return this.drops.get();
+    }
+
+    /**
+     * Records written to the file.
+     * @return Written records counter
+     */
+    public long written() {
+        return this.writes.get();
+    }
+
+    /**
+     * Escape field of a record, so it can not break the record into lines
+     * or fields: backslash, tab, line breaks and other control characters
+     * are replaced with escape sequences.
+     * @param field Field value
+     * @return Escaped value
+     */
+    static String escape(final String field) {
+        final StringBuilder res = new StringBuilder(field.length());
+        for (int idx = 0; idx < field.length(); idx += 1) {
+            final char chr = field.charAt(idx);
+            if (chr == '\\') {
+                res.append("\\\\");
+            } else if (chr == '\t') {
+                res.append("\\t");
+            } else if (chr == '\n') {
+                res.append("\\n");
+            } else if (chr == '\r') {
+                res.append("\\r");
+            } else if (Character.isISOControl(chr)) {
+                res.append(String.format("\\u%04x", (int) chr));
+            } else {
+                res.append(chr);
+            }
+        }
+        return res.toString();
+    }
+
+    @Override
+    public void close() {
+        this.closed.set(true);
+        if (this.started.get()) {
+            LockSupport.unpark(this.writer);
+            try {
+                this.writer.join();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Write records until closed.
+     */
+    private void run() {
+        final List<String> batch = new ArrayList<>(AccessLog.BATCH);
+        while (true) {
+            this.ring.drain(batch, AccessLog.BATCH);
+            if (batch.isEmpty()) {
+                if (this.closed.get()) {
+                    break;
+                }
+                LockSupport.parkNanos(AccessLog.IDLE);
+            } else {
+                this.write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write batch of records to the file.
+     * @param batch Records
+     */
+    private void write(final List<String> batch) {
+        try {
+            if (Files.exists(this.file) && Files.size(this.file) >= this.limit) {
+                this.roll();
+            }
+            try (Writer out = Files.newBufferedWriter(
+                this.file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND
+            )) {
+                for (final String record : batch) {
+                    out.write(record);
+                    out.write('\n');
+                }
+            }
+            this.writes.addAndGet(batch.size());
+        } catch (final IOException err) {
+            this.drops.addAndGet(batch.size());
+            Logger.warn(this, "Failed to write access log: %[exception]s", err);
+        }
+    }
+
+    /**
+     * Rename current file to `.1` and shift old files.
+     * @throws IOException On error
+     */
+    private void roll() throws IOException {
+        Files.deleteIfExists(this.old(this.keep));
+        for (int idx = this.keep - 1; idx > 0; idx -= 1) {
+            if (Files.exists(this.old(idx))) {
+                Files.move(this.old(idx), this.old(idx + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (this.keep > 0) {
+            Files.move(this.file, this.old(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(this.file);
+        }
+    }
+
+    /**
+     * Old file path.
+     * @param idx Index
+     * @return Path
+     */
+    private Path old(final int idx) {
+        return this.file.resolveSibling(String.format("%s.%d", this.file.getFileName(), idx));
+    }
+
+    /**
+     * Policy when buffer is full.
+     * @since 0.8
+     */
+    public enum Policy {
+        /**
+         * Drop the record and count it.
+         */
+        DROP,
+
+        /**
+         * Wait until there is free space in the buffer. Use with care,
+         * it blocks request thread.
+         */
+        BLOCK
+    }
+
+    /**
+     * Bounded lock-free ring buffer for many producers and single consumer.
+     * Producers claim a slot by moving tail with compare-and-set, consumer
+     * frees slots by moving head.
+     * @since 0.8
+     */
+    private static final class Ring {
+
+        /**
+         * Slots.
+         */
+        private final AtomicReferenceArray<String> slots;
+
+        /**
+         * Index mask.
+         */
+        private final int mask;
+
+        /**
+         * Next slot to claim.
+         */
+        private final AtomicLong tail;
+
+        /**
+         * Next slot to consume.
+         */
+        private final AtomicLong head;
+
+        /**
+         * Ctor.
+         * @param capacity Capacity, rounded up to power of two
+         */
+        Ring(final int capacity) {
+            final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+            this.tail = new AtomicLong();
+            this.head = new AtomicLong();
+        }
+
+        /**
+         * Add item.
+         * @param item Item
+         * @return False if buffer is full
+         */
+        boolean offer(final String item) {
+            boolean res = false;
+            while (true) {
+                final long pos = this.tail.get();
+                if (pos - this.head.get() > this.mask) {
+                    break;
+                }
+                if (this.tail.compareAndSet(pos, pos + 1)) {
+                    this.slots.lazySet((int) pos & this.mask, item);
+                    res = true;
+                    break;
+                }
+            }
+            return res;
+        }
+
+        /**
+         * Move available items to the list, called by consumer only.
+         * @param out Output list
+         * @param max Max items to move
+         */
+        void drain(final List<String> out, final int max) {
+            long pos = this.head.get();
+            while (out.size() < max) {
+                final int idx = (int) pos & this.mask;
+                final String item = this.slots.get(idx);
+                if (item == null) {
+                    break;
+                }
+                this.slots.lazySet(idx, null);
+                out.add(item);
+                pos += 1;
+                this.head.lazySet(pos);
+            }
+        }
+    }
+}
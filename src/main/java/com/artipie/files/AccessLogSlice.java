@@ -0,0 +1,188 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.rq.RequestLineFrom;
+import io.reactivex.Flowable;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice writing a record of every request to {@link AccessLog}.
+ * <p>
+ * Record is a tab separated line of request time, user name, forwarded
+ * addresses chain, method, raw path, response status, response body bytes,
+ * duration in milliseconds and cache outcome of {@link FileProxySlice},
+ * missing values are replaced with `-`. Fields are escaped, so client can not
+ * forge records. User name is logged as verified only if the credentials
+ * were authenticated recently by the authentication layer using given
+ * {@link AuthCache}, the log never calls authentication itself; otherwise
+ * it is logged as `claimed:name`. Record
+ * is added when response is sent, records are written to the file
+ * asynchronously.
+ * </p>
+ * @since 0.8
+ */
+public final class AccessLogSlice implements Slice {
+
+    /**
+     * Missing value placeholder.
+     */
+    private static final String NONE = "-";
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Access log.
+     */
+    private final AccessLog log;
+
+    /**
+     * Authentication of verified user names, must not call slow origin.
+     */
+    private final Optional<Authentication> auth;
+
+    /**
+     * Ctor, user names are logged as claimed.
+     * @param origin Origin slice
+     * @param log Access log
+     */
+    public AccessLogSlice(final Slice origin, final AccessLog log) {
+        this(origin, log, Optional.empty());
+    }
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param log Access log
+     * @param cache Authentication cache used by the authentication layer of
+     *  origin slice, e.g. passed to {@link FilesSlice}
+     */
+    public AccessLogSlice(final Slice origin, final AccessLog log, final AuthCache cache) {
+        this(origin, log, Optional.of(cache::authenticated));
+    }
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param log Access log
+     * @param auth Authentication of verified user names
+     */
+    private AccessLogSlice(final Slice origin, final AccessLog log,
+        final Optional<Authentication> auth) {
+        this.origin = origin;
+        this.log = log;
+        this.auth = auth;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        return connection -> {
+            final Instant time = Instant.now();
+            final long start = System.nanoTime();
+            final AtomicReference<String> status = new AtomicReference<>(AccessLogSlice.NONE);
+            final AtomicReference<String> outcome = new AtomicReference<>(AccessLogSlice.NONE);
+            final AtomicLong bytes = new AtomicLong();
+            return this.origin.response(
+                line, new Headers.From(headers, FileProxySlice.OUTCOME, "report"), body
+            ).send(
+                (rsstatus, rsheaders, rsbody) -> {
+                    status.set(rsstatus.code());
+                    final List<Map.Entry<String, String>> kept = new ArrayList<>(0);
+                    for (final Map.Entry<String, String> header : rsheaders) {
+                        if (FileProxySlice.OUTCOME.equalsIgnoreCase(header.getKey())) {
+                            outcome.set(header.getValue());
+                        } else {
+                            kept.add(header);
+                        }
+                    }
+                    return connection.accept(
+                        rsstatus, new Headers.From(kept),
+                        Flowable.fromPublisher(rsbody)
+                            .doOnNext(buf -> bytes.addAndGet(buf.remaining()))
+                    );
+                }
+            ).whenComplete(
+                (nothing, throwable) -> {
+                    final RequestLineFrom rqline = new RequestLineFrom(line);
+                    final RqClient client = new RqClient(headers);
+                    this.log.record(
+                        String.join(
+                            "\t",
+                            time.toString(),
+                            this.user(client),
+                            client.forwarded().map(AccessLog::escape)
+                                .orElse(AccessLogSlice.NONE),
+                            rqline.method().value(),
+                            AccessLog.escape(rqline.uri().getRawPath()),
+                            status.get(),
+                            String.valueOf(bytes.get()),
+                            String.valueOf(
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                            ),
+                            outcome.get()
+                        )
+                    );
+                }
+            );
+        };
+    }
+
+    /**
+     * User name field of the record.
+     * @param client Request client
+     * @return Escaped verified user name, claimed user name or placeholder
+     */
+    private String user(final RqClient client) {
+        return client.user().map(
+            name -> {
+                final String res;
+                if (this.auth.flatMap(client::user).isPresent()) {
+                    res = AccessLog.escape(name);
+                } else {
+                    res = String.format("claimed:%s", AccessLog.escape(name));
+                }
+                return res;
+            }
+        ).orElse(AccessLogSlice.NONE);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.auth.Permissions;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of authentication and permission decisions with time to live.
+ * <p>
+ * Decorates both {@link Authentication} and {@link Permissions}, so it can be
+ * passed to {@link FilesSlice} instead of them to avoid slow password checks
+ * or directory lookups on every request. Authentication results are keyed by
+ * salted SHA-256 hash of credentials, plain passwords are never kept. Only
+ * successful authentications are cached, so new users or changed passwords
+ * are picked up at once; permission decisions are cached both ways. When
+ * cache is full, expired entries are removed and then entries closest to
+ * expiration. Use {@link #invalidate(String)} when user password or
+ * permissions change and {@link #invalidate()} to drop everything.
+ * </p>
+ * @since 0.8
+ */
+public final class AuthCache implements Authentication, Permissions {
+
+    /**
+     * Origin authentication.
+     */
+    private final Authentication auth;
+
+    /**
+     * Origin permissions.
+     */
+    private final Permissions perms;
+
+    /**
+     * Time to live of decisions in nanoseconds.
+     */
+    private final long ttl;
+
+    /**
+     * Max entries count of each cache.
+     */
+    private final int capacity;
+
+    /**
+     * Random salt of credential hashes.
+     */
+    private final byte[] salt;
+
+    /**
+     * Authenticated users by credentials hash.
+     */
+    private final ConcurrentMap<String, Entry<Optional<User>>> users;
+
+    /**
+     * Permission decisions by user and action.
+     */
+    private final ConcurrentMap<String, Entry<Boolean>> decisions;
+
+    /**
+     * Cache hits.
+     */
+    private final AtomicLong hit;
+
+    /**
+     * Cache misses.
+     */
+    private final AtomicLong miss;
+
+    /**
+     * Ctor.
+     * @param auth Origin authentication
+     * @param perms Origin permissions
+     * @param ttl Time to live of decisions
+     * @param capacity Max entries count of each cache
+     */
+    public AuthCache(final Authentication auth, final Permissions perms,
+        final Duration ttl, final int capacity) {
+        this.auth = auth;
+        this.perms = perms;
+        this.ttl = ttl.toNanos();
+        this.capacity = capacity;
+        this.salt = new byte[16];
+        new SecureRandom().nextBytes(this.salt);
+        this.users = new ConcurrentHashMap<>();
+        this.decisions = new ConcurrentHashMap<>();
+        this.hit = new AtomicLong();
+        this.miss = new AtomicLong();
+    }
+
+    @Override
+    public Optional<User> user(final String name, final String pass) {
+        return this.cached(
+            this.users, this.hash(name, pass), name, () -> this.auth.user(name, pass),
+            Optional::isPresent
+        );
+    }
+
+    @Override
+    public boolean allowed(final User user, final String action) {
+        return this.cached(
+            this.decisions,
+            String.join("\n", user.name(), String.join(",", user.groups()), action),
+            user.name(), () -> this.perms.allowed(user, action), any -> true
+        );
+    }
+
+    /**
+     * User authenticated with the credentials recently, answered from cache
+     * only, origin authentication is never called. Use it to learn identity
+     * verified by authentication layer using this cache, e.g. for logging.
+     * @param name User name
+     * @param pass Password
+     * @return User if credentials were authenticated and the decision is cached
+     */
+    public Optional<User> authenticated(final String name, final String pass) {
+        final Entry<Optional<User>> entry = this.users.get(this.hash(name, pass));
+        Optional<User> res = Optional.empty();
+        if (entry != null && System.nanoTime() - entry.expires < 0) {
+            res = entry.value;
+        }
+        return res;
+    }
+
+    /**
+     * Drop cached decisions of the user.
+     * @param name User name
+     */
+    public void invalidate(final String name) {
+        this.users.values().removeIf(entry -> entry.user.equals(name));
+        this.decisions.values().removeIf(entry -> entry.user.equals(name));
+    }
+
+    /**
+     * Drop all cached decisions.
+     */
+    public void invalidate() {
+        this.users.clear();
+        this.decisions.clear();
+    }
+
+    /**
+     * Decisions served from cache.
+     * @return Hits counter
+     */
+    public long hits() {
+        return this.hit.get();
+    }
+
+    /**
+     * Decisions delegated to origin.
+     * @return Misses counter
+     */
+    public long misses() {
+        return this.miss.get();
+    }
+
+    /**
+     * Cached decision.
+     * @param cache Cache
+     * @param key Cache key
+     * @param user User name
+     * @param origin Origin decision
+     * @param cacheable Whether decision can be cached
+     * @param <T> Decision type
+     * @return Decision
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    private <T> T cached(final ConcurrentMap<String, Entry<T>> cache, final String key,
+        final String user, final Supplier<T> origin, final Predicate<T> cacheable) {
+        final long now = System.nanoTime();
+        final Entry<T> entry = cache.get(key);
+        final T res;
+        if (entry == null || now - entry.expires >= 0) {
+            this.miss.incrementAndGet();
+            res = origin.get();
+            if (cacheable.test(res)) {
+                if (cache.size() >= this.capacity) {
+                    AuthCache.evict(cache, now);
+                }
+                cache.put(key, new Entry<>(res, user, now + this.ttl));
+            } else {
+                cache.remove(key);
+            }
+        } else {
+            this.hit.incrementAndGet();
+            res = entry.value;
+        }
+        return res;
+    }
+
+    /**
+     * Salted hash of credentials.
+     * @param name User name
+     * @param pass Password
+     * @return Hash string
+     */
+    private String hash(final String name, final String pass) {
+        final MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException err) {
+            throw new IllegalStateException(err);
+        }
+        sha.update(this.salt);
+        sha.update(name.getBytes(StandardCharsets.UTF_8));
+        sha.update((byte) 0);
+        sha.update(pass.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(sha.digest());
+    }
+
+    /**
+     * Make room in full cache: remove expired entries or, if there are none,
+     * the entry closest to expiration.
+     * @param cache Cache
+     * @param now Current time in nanoseconds
+     * @param <T> Decision type
+     */
+    private static <T> void evict(final ConcurrentMap<String, Entry<T>> cache,
+        final long now) {
+        if (!cache.values().removeIf(entry -> now - entry.expires >= 0)) {
+            cache.entrySet().stream()
+                .min(Comparator.comparingLong(item -> item.getValue().expires))
+                .map(Map.Entry::getKey)
+                .ifPresent(cache::remove);
+        }
+    }
+
+    /**
+     * Cached decision.
+     * @param <T> Decision type
+     * @since 0.8
+     */
+    private static final class Entry<T> {
+
+        /**
+         * Decision.
+         */
+        private final T value;
+
+        /**
+         * User name.
+         */
+        private final String user;
+
+        /**
+         * Expiration time in nanoseconds.
+         */
+        private final long expires;
+
+        /**
+         * Ctor.
+         * @param value Decision
+         * @param user User name
+         * @param expires Expiration time in nanoseconds
+         */
+        Entry(final T value, final String user, final long expires) {
+            this.value = value;
+            this.user = user;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulkhead limiting concurrent operations with bounded wait queue.
+ * <p>
+ * Permit requests over the limit wait in the queue for at most the
+ * configured timeout. Requests arriving when the queue is full are rejected
+ * immediately with {@link RejectedExecutionException}, queued requests
+ * which were not granted a permit in time fail with {@link TimeoutException}.
+ * Nothing blocks, waiters are completed by releasing operations.
+ * </p>
+ * @since 0.8
+ */
+public final class Bulkhead {
+
+    /**
+     * Max concurrent operations.
+     */
+    private final int limit;
+
+    /**
+     * Max queued operations.
+     */
+    private final int capacity;
+
+    /**
+     * Max time to wait in the queue.
+     */
+    private final Duration timeout;
+
+    /**
+     * Active operations count.
+     */
+    private final AtomicInteger running;
+
+    /**
+     * Queued operations count.
+     */
+    private final AtomicInteger waiting;
+
+    /**
+     * Rejected operations count.
+     */
+    private final AtomicLong rejections;
+
+    /**
+     * Waiters queue.
+     */
+    private final Queue<CompletableFuture<Void>> waiters;
+
+    /**
+     * Ctor.
+     * @param limit Max concurrent operations
+     * @param capacity Max queued operations
+     * @param timeout Max time to wait in the queue
+     */
+    public Bulkhead(final int limit, final int capacity, final Duration timeout) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Concurrency limit should be positive");
+        }
+        this.limit = limit;
+        this.capacity = capacity;
+        this.timeout = timeout;
+        this.running = new AtomicInteger();
+        this.waiting = new AtomicInteger();
+        this.rejections = new AtomicLong();
+        this.waiters = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Acquire a permit. Every successfully acquired permit must be
+     * released with {@link #release()}.
+     * @return Completion when permit is granted
+     */
+    public CompletionStage<Void> acquire() {
+        final CompletableFuture<Void> res;
+        if (this.tryAcquire()) {
+            res = CompletableFuture.completedFuture(null);
+        } else if (this.waiting.incrementAndGet() > this.capacity) {
+            this.waiting.decrementAndGet();
+            this.rejections.incrementAndGet();
+            res = new CompletableFuture<>();
+            res.completeExceptionally(
+                new RejectedExecutionException("Bulkhead queue is full")
+            );
+        } else {
+            res = new CompletableFuture<>();
+            this.waiters.add(res);
+            final Disposable timer = Completable.timer(
+                this.timeout.toNanos(), TimeUnit.NANOSECONDS
+            ).subscribe(
+                () -> {
+                    if (this.waiters.remove(res)) {
+                        this.waiting.decrementAndGet();
+                        this.rejections.incrementAndGet();
+                        res.completeExceptionally(
+                            new TimeoutException("Bulkhead queue timeout")
+                        );
+                    }
+                }
+            );
+            res.whenComplete((nothing, throwable) -> timer.dispose());
+            this.drain();
+        }
+        return res;
+    }
+
+    /**
+     * Release a permit, handing it over to the next waiter if there is one.
+     */
+    public void release() {
+        this.running.decrementAndGet();
+        this.drain();
+    }
+
+    /**
+     * Active operations gauge.
+     * @return Number of operations holding a permit
+     */
+    public int active() {
+        return this.running.get();
+    }
+
+    /**
+     * Queued operations gauge.
+     * @return Number of operations waiting for a permit
+     */
+    public int queued() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Rejected operations counter.
+     * @return Number of operations rejected because of full queue or timeout
+     */
+    public long rejected() {
+        return this.rejections.get();
+    }
+
+    /**
+     * Try to take a free permit.
+     * @return True if permit was taken
+     */
+    private boolean tryAcquire() {
+        boolean res = false;
+        int cur = this.running.get();
+        while (cur < this.limit) {
+            if (this.running.compareAndSet(cur, cur + 1)) {
+                res = true;
+                break;
+            }
+            cur = this.running.get();
+        }
+        return res;
+    }
+
+    /**
+     * Grant free permits to waiters.
+     */
+    private void drain() {
+        while (!this.waiters.isEmpty() && this.tryAcquire()) {
+            final CompletableFuture<Void> waiter = this.waiters.poll();
+            if (waiter == null) {
+                this.running.decrementAndGet();
+            } else {
+                this.waiting.decrementAndGet();
+                waiter.complete(null);
+            }
+        }
+    }
+}
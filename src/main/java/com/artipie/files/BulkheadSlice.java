@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.rs.RsStatus;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice which limits concurrent requests to origin slice with {@link Bulkhead}.
+ * A permit is held until the response is sent completely. Requests which could
+ * not get a permit are answered with `503 Service Unavailable` without calling
+ * the origin, so {@link FileProxySlice} falls back to cached content for them.
+ * Such responses carry {@link #REJECTED} header: they are local load shedding,
+ * not upstream failures, so {@link Upstream} and {@link CircuitBreakerSlice}
+ * do not count them.
+ * @since 0.8
+ */
+public final class BulkheadSlice implements Slice {
+
+    /**
+     * Header marking responses rejected by the bulkhead.
+     */
+    static final String REJECTED = "X-Artipie-Rejected";
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Bulkhead.
+     */
+    private final Bulkhead bulkhead;
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param bulkhead Bulkhead
+     */
+    public BulkheadSlice(final Slice origin, final Bulkhead bulkhead) {
+        this.origin = origin;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        return connection -> this.bulkhead.acquire().handle(
+            (nothing, throwable) -> {
+                final CompletionStage<Void> res;
+                if (throwable == null) {
+                    res = CompletableFuture.completedFuture(nothing).thenCompose(
+                        none -> this.origin.response(line, headers, body).send(connection)
+                    ).whenComplete((none, err) -> this.bulkhead.release());
+                } else {
+                    res = connection.accept(
+                        RsStatus.UNAVAILABLE,
+                        new Headers.From(BulkheadSlice.REJECTED, "bulkhead"),
+                        Content.EMPTY
+                    );
+                }
+                return res;
+            }
+        ).thenCompose(Function.identity());
+    }
+
+    /**
+     * Whether response was rejected by the bulkhead.
+     * @param headers Response headers
+     * @return True if response has rejection header
+     */
+    static boolean rejected(final Iterable<Map.Entry<String, String>> headers) {
+        boolean res = false;
+        for (final Map.Entry<String, String> header : headers) {
+            if (BulkheadSlice.REJECTED.equalsIgnoreCase(header.getKey())) {
+                res = true;
+                break;
+            }
+        }
+        return res;
+    }
+}
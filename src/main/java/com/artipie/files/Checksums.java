@@ -0,0 +1,233 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ext.PublisherAs;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Recorded checksums of storage keys: SHA-256 digest and size of content.
+ * Records are kept in the same storage under `.checksums` key as lines of
+ * hex digest and size separated by space. Writes in progress are marked
+ * under `.checksums-pending` key with the start time of the write, marker is
+ * cleared when the record is saved, so marker left behind means the write
+ * was aborted and its content may be truncated.
+ * @since 0.8
+ */
+final class Checksums {
+
+    /**
+     * Root key of records.
+     */
+    static final Key ROOT = new Key.From(".checksums");
+
+    /**
+     * Root key of pending write markers.
+     */
+    static final Key PENDING = new Key.From(".checksums-pending");
+
+    /**
+     * Storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Ctor.
+     * @param storage Storage
+     */
+    Checksums(final Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Mark write of the key as pending.
+     * @param key Key
+     * @return Completion
+     */
+    CompletableFuture<Void> begin(final Key key) {
+        return this.storage.save(
+            Checksums.marker(key),
+            new Content.From(
+                String.valueOf(System.currentTimeMillis()).getBytes(StandardCharsets.US_ASCII)
+            )
+        );
+    }
+
+    /**
+     * Start time of pending write of the key.
+     * @param key Key
+     * @return Milliseconds if write is pending
+     */
+    CompletionStage<Optional<Long>> started(final Key key) {
+        final Key marker = Checksums.marker(key);
+        return this.storage.exists(marker).thenCompose(
+            exists -> {
+                final CompletionStage<Optional<Long>> res;
+                if (exists) {
+                    res = this.storage.value(marker)
+                        .thenCompose(content -> new PublisherAs(content).asciiString())
+                        .thenApply(time -> Optional.of(Long.parseLong(time.trim())));
+                } else {
+                    res = CompletableFuture.completedFuture(Optional.empty());
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Record checksum of the key and clear its pending write marker.
+     * @param key Key
+     * @param digest SHA-256 digest
+     * @param size Content size
+     * @return Completion
+     */
+    CompletableFuture<Void> save(final Key key, final byte[] digest, final long size) {
+        return this.storage.save(
+            Checksums.record(key),
+            new Content.From(
+                Checksums.line(digest, size).getBytes(StandardCharsets.US_ASCII)
+            )
+        ).thenCompose(nothing -> this.remove(Checksums.marker(key)));
+    }
+
+    /**
+     * Recorded checksum of the key.
+     * @param key Key
+     * @return Hex digest and size separated by space if recorded
+     */
+    CompletionStage<Optional<String>> load(final Key key) {
+        final Key record = Checksums.record(key);
+        return this.storage.exists(record).thenCompose(
+            exists -> {
+                final CompletionStage<Optional<String>> res;
+                if (exists) {
+                    res = this.storage.value(record)
+                        .thenCompose(content -> new PublisherAs(content).asciiString())
+                        .thenApply(Optional::of);
+                } else {
+                    res = CompletableFuture.completedFuture(Optional.empty());
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Move record of the key.
+     * @param source Source key
+     * @param destination Destination key
+     * @return Completion
+     */
+    CompletableFuture<Void> move(final Key source, final Key destination) {
+        final Key record = Checksums.record(source);
+        return this.storage.exists(record).thenCompose(
+            exists -> {
+                final CompletableFuture<Void> res;
+                if (exists) {
+                    res = this.storage.move(record, Checksums.record(destination));
+                } else {
+                    res = this.delete(destination);
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Delete record and pending write marker of the key if exist.
+     * @param key Key
+     * @return Completion
+     */
+    CompletableFuture<Void> delete(final Key key) {
+        return this.remove(Checksums.record(key))
+            .thenCompose(nothing -> this.remove(Checksums.marker(key)));
+    }
+
+    /**
+     * Checksum line.
+     * @param digest SHA-256 digest
+     * @param size Content size
+     * @return Hex digest and size separated by space
+     */
+    static String line(final byte[] digest, final long size) {
+        return String.format("%s %d", Checksums.hex(digest), size);
+    }
+
+    /**
+     * Record key.
+     * @param key Key
+     * @return Record key
+     */
+    private static Key record(final Key key) {
+        return new Key.From(Checksums.ROOT, key.string());
+    }
+
+    /**
+     * Pending write marker key.
+     * @param key Key
+     * @return Marker key
+     */
+    private static Key marker(final Key key) {
+        return new Key.From(Checksums.PENDING, key.string());
+    }
+
+    /**
+     * Delete storage key if exists.
+     * @param key Key
+     * @return Completion
+     */
+    private CompletableFuture<Void> remove(final Key key) {
+        return this.storage.exists(key).thenCompose(
+            exists -> {
+                final CompletableFuture<Void> res;
+                if (exists) {
+                    res = this.storage.delete(key);
+                } else {
+                    res = CompletableFuture.allOf();
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Hex string.
+     * @param bytes Bytes
+     * @return Hex
+     */
+    private static String hex(final byte[] bytes) {
+        final StringBuilder res = new StringBuilder(bytes.length * 2);
+        for (final byte item : bytes) {
+            res.append(String.format("%02x", item));
+        }
+        return res.toString();
+    }
+}
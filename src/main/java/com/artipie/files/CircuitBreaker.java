@@ -0,0 +1,264 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker state machine.
+ * <p>
+ * The breaker is closed while the rate of failures among the latest calls
+ * is below the threshold. When it is reached, the breaker opens and calls
+ * are not allowed. After the cooldown period one probe call is allowed
+ * in half-open state: its success closes the breaker, its failure opens
+ * the breaker again for another cooldown period.
+ * </p>
+ * @since 0.8
+ */
+public final class CircuitBreaker {
+
+    /**
+     * Failures rate threshold.
+     */
+    private final double threshold;
+
+    /**
+     * Minimum number of calls before failures rate is evaluated.
+     */
+    private final int minimum;
+
+    /**
+     * Time to stay open before probing.
+     */
+    private final Duration cooldown;
+
+    /**
+     * Time to wait for response before counting call as failed.
+     */
+    private final Duration wait;
+
+    /**
+     * Current state.
+     */
+    private final AtomicReference<State> current;
+
+    /**
+     * Time when breaker was opened in nanoseconds.
+     */
+    private final AtomicLong opened;
+
+    /**
+     * Outcomes window of latest calls, 1 for failure and 0 for success.
+     */
+    private final AtomicIntegerArray outcomes;
+
+    /**
+     * Calls recorded since breaker was closed.
+     */
+    private final AtomicLong calls;
+
+    /**
+     * Failures in outcomes window.
+     */
+    private final AtomicInteger failures;
+
+    /**
+     * Number of transitions into each state.
+     */
+    private final Map<State, AtomicLong> changes;
+
+    /**
+     * Ctor with default settings: opens on 50% failures of the latest 20 calls
+     * (at least 10 calls), probes after 30 seconds and counts calls without
+     * response for 10 seconds as failed.
+     */
+    public CircuitBreaker() {
+        // @checkstyle MagicNumberCheck (1 line)
+        this(0.5, 20, 10, Duration.ofSeconds(30), Duration.ofSeconds(10));
+    }
+
+    /**
+     * Ctor.
+     * @param threshold Failures rate threshold, from 0 to 1
+     * @param window Number of latest calls to evaluate failures rate on
+     * @param minimum Minimum number of calls before failures rate is evaluated
+     * @param cooldown Time to stay open before probing
+     * @param timeout Time to wait for response before counting call as failed
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public CircuitBreaker(final double threshold, final int window, final int minimum,
+        final Duration cooldown, final Duration timeout) {
+        this.threshold = threshold;
+        this.minimum = Math.min(minimum, window);
+        this.cooldown = cooldown;
+        this.wait = timeout;
+        this.current = new AtomicReference<>(State.CLOSED);
+        this.opened = new AtomicLong();
+        this.outcomes = new AtomicIntegerArray(window);
+        this.calls = new AtomicLong();
+        this.failures = new AtomicInteger();
+        this.changes = new EnumMap<>(State.class);
+        for (final State state : State.values()) {
+            this.changes.put(state, new AtomicLong());
+        }
+    }
+
+    /**
+     * Current state.
+     * @return State
+     */
+    public State state() {
+        return this.current.get();
+    }
+
+    /**
+     * Number of times breaker moved into the state.
+     * @param state State
+     * @return Transitions count
+     */
+    public long transitions(final State state) {
+        return this.changes.get(state).get();
+    }
+
+    /**
+     * Time to wait for response before counting call as failed.
+     * @return Timeout
+     */
+    public Duration timeout() {
+        return this.wait;
+    }
+
+    /**
+     * Whether calls are allowed.
+     * @return True if breaker is closed
+     */
+    public boolean allowed() {
+        return this.current.get() == State.CLOSED;
+    }
+
+    /**
+     * Try to start probe call: moves open breaker to half-open state
+     * when the cooldown period is over.
+     * @return True if caller should make a probe call
+     */
+    public boolean probe() {
+        return this.current.get() == State.OPEN
+            && System.nanoTime() - this.opened.get() >= this.cooldown.toNanos()
+            && this.move(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * Record successful call.
+     */
+    public void success() {
+        if (!this.move(State.HALF_OPEN, State.CLOSED)) {
+            this.record(0);
+        }
+    }
+
+    /**
+     * Record call which was not made, e.g. rejected locally: it is not
+     * counted, and if it was a probe the breaker is opened back without
+     * restarting the cooldown, so the next call probes again.
+     */
+    public void ignored() {
+        this.current.compareAndSet(State.HALF_OPEN, State.OPEN);
+    }
+
+    /**
+     * Record failed call.
+     */
+    public void failure() {
+        if (!this.move(State.HALF_OPEN, State.OPEN)) {
+            this.record(1);
+            final long total = Math.min(this.calls.get(), this.outcomes.length());
+            if (total >= this.minimum
+                && this.failures.get() >= this.threshold * total) {
+                this.move(State.CLOSED, State.OPEN);
+            }
+        }
+    }
+
+    /**
+     * Record call outcome in window when breaker is closed.
+     * @param outcome Outcome, 1 for failure and 0 for success
+     */
+    private void record(final int outcome) {
+        if (this.current.get() == State.CLOSED) {
+            final int idx = (int) (this.calls.getAndIncrement() % this.outcomes.length());
+            this.failures.addAndGet(outcome - this.outcomes.getAndSet(idx, outcome));
+        }
+    }
+
+    /**
+     * Move breaker from one state to another.
+     * @param from Expected current state
+     * @param target New state
+     * @return True if state was changed
+     */
+    private boolean move(final State from, final State target) {
+        final boolean res = this.current.compareAndSet(from, target);
+        if (res) {
+            if (target == State.OPEN) {
+                this.opened.set(System.nanoTime());
+            }
+            if (target == State.CLOSED) {
+                for (int idx = 0; idx < this.outcomes.length(); idx += 1) {
+                    this.outcomes.set(idx, 0);
+                }
+                this.failures.set(0);
+                this.calls.set(0);
+            }
+            this.changes.get(target).incrementAndGet();
+        }
+        return res;
+    }
+
+    /**
+     * Circuit breaker state.
+     * @since 0.8
+     */
+    public enum State {
+        /**
+         * Calls are allowed.
+         */
+        CLOSED,
+
+        /**
+         * Calls are not allowed.
+         */
+        OPEN,
+
+        /**
+         * Probe call is in progress, other calls are not allowed.
+         */
+        HALF_OPEN
+    }
+}
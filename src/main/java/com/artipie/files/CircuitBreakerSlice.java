@@ -0,0 +1,183 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.http.Connection;
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice guarded by {@link CircuitBreaker}.
+ * <p>
+ * Server errors, exceptions and responses not received within breaker timeout
+ * are counted as failures, responses rejected by local {@link BulkheadSlice}
+ * are not counted. Failed and timed out calls are answered with
+ * `503 Service Unavailable`, the latter when timeout expires. While breaker is not closed
+ * requests are answered with `503 Service Unavailable` at once, without
+ * calling origin, so {@link FileProxySlice} serves cached content or `404`.
+ * When breaker cooldown is over, the request which noticed it is also sent
+ * to origin in background as a probe, its result closes or re-opens the
+ * breaker.
+ * </p>
+ * @since 0.8
+ */
+public final class CircuitBreakerSlice implements Slice {
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Circuit breaker.
+     */
+    private final CircuitBreaker breaker;
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param breaker Circuit breaker
+     */
+    public CircuitBreakerSlice(final Slice origin, final CircuitBreaker breaker) {
+        this.origin = origin;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final Response res;
+        if (this.breaker.allowed()) {
+            res = connection -> this.call(
+                this.origin.response(line, headers, body), connection
+            );
+        } else {
+            if (this.breaker.probe()) {
+                this.call(
+                    this.origin.response(line, headers, body),
+                    (status, rsheaders, rsbody) -> {
+                        Flowable.fromPublisher(rsbody).take(0).subscribe();
+                        return CompletableFuture.allOf();
+                    }
+                );
+            }
+            res = new RsWithStatus(RsStatus.UNAVAILABLE);
+        }
+        return res;
+    }
+
+    /**
+     * Send origin response to connection recording outcome in the breaker.
+     * @param response Origin response
+     * @param connection Connection
+     * @return Completion of response sending
+     */
+    private CompletionStage<Void> call(final Response response, final Connection connection) {
+        final AtomicBoolean pending = new AtomicBoolean(true);
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final Disposable timer = Completable.timer(
+            this.breaker.timeout().toNanos(), TimeUnit.NANOSECONDS
+        ).subscribe(
+            () -> {
+                if (pending.compareAndSet(true, false)) {
+                    this.breaker.failure();
+                    CircuitBreakerSlice.complete(
+                        connection.accept(RsStatus.UNAVAILABLE, Headers.EMPTY, Content.EMPTY),
+                        done
+                    );
+                }
+            }
+        );
+        response.send(
+            (status, rsheaders, rsbody) -> {
+                final CompletionStage<Void> res;
+                if (pending.compareAndSet(true, false)) {
+                    timer.dispose();
+                    if (BulkheadSlice.rejected(rsheaders)) {
+                        this.breaker.ignored();
+                    } else if (status.serverError()) {
+                        this.breaker.failure();
+                    } else {
+                        this.breaker.success();
+                    }
+                    res = CircuitBreakerSlice.complete(
+                        connection.accept(status, rsheaders, rsbody), done
+                    );
+                } else {
+                    Flowable.fromPublisher(rsbody).take(0).subscribe();
+                    res = CompletableFuture.allOf();
+                }
+                return res;
+            }
+        ).whenComplete(
+            (nothing, throwable) -> {
+                if (throwable != null && pending.compareAndSet(true, false)) {
+                    timer.dispose();
+                    this.breaker.failure();
+                    CircuitBreakerSlice.complete(
+                        connection.accept(RsStatus.UNAVAILABLE, Headers.EMPTY, Content.EMPTY),
+                        done
+                    );
+                }
+            }
+        );
+        return done;
+    }
+
+    /**
+     * Complete future with the result of the stage.
+     * @param stage Stage
+     * @param future Future to complete
+     * @return The same stage
+     */
+    private static CompletionStage<Void> complete(
+        final CompletionStage<Void> stage, final CompletableFuture<Void> future
+    ) {
+        return stage.whenComplete(
+            (nothing, throwable) -> {
+                if (throwable == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(throwable);
+                }
+            }
+        );
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rs.StandardRs;
+import com.artipie.http.slice.KeyFromPath;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.reactivestreams.Publisher;
+
+/**
+ * Delete slice coordinated by {@link KeyWrites}.
+ * Responds with `404` if key does not exist and with `204` otherwise, delete
+ * superseded by a newer write of the key does nothing.
+ * @since 0.8
+ */
+public final class CoordinatedDelete implements Slice {
+
+    /**
+     * Storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Writes coordination.
+     */
+    private final KeyWrites writes;
+
+    /**
+     * Ctor.
+     * @param storage Storage
+     * @param writes Writes coordination
+     */
+    public CoordinatedDelete(final Storage storage, final KeyWrites writes) {
+        this.storage = storage;
+        this.writes = writes;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final Key key = new KeyFromPath(new RequestLineFrom(line).uri().getPath());
+        return new AsyncResponse(
+            this.writes.write(
+                key,
+                () -> CompletableFuture.completedFuture(key),
+                (target, newer) -> {
+                    final CompletionStage<Response> res;
+                    if (newer) {
+                        res = this.storage.exists(target).thenCompose(
+                            exists -> {
+                                final CompletionStage<Response> rsp;
+                                if (exists) {
+                                    rsp = this.storage.delete(target)
+                                        .thenApply(nothing -> StandardRs.NO_CONTENT);
+                                } else {
+                                    rsp = CompletableFuture.completedFuture(
+                                        StandardRs.NOT_FOUND
+                                    );
+                                }
+                                return rsp;
+                            }
+                        );
+                    } else {
+                        res = CompletableFuture.completedFuture(StandardRs.NO_CONTENT);
+                    }
+                    return res;
+                }
+            )
+        );
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import com.artipie.http.slice.ContentWithSize;
+import com.artipie.http.slice.KeyFromPath;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.reactivestreams.Publisher;
+
+/**
+ * Upload slice coordinated by {@link KeyWrites}.
+ * Content is saved to a temporary key under `.staging` first and then moved
+ * to the target key, so readers see either complete old or complete new
+ * content. Content of uploads superseded by newer writes is discarded.
+ * @since 0.8
+ */
+public final class CoordinatedUpload implements Slice {
+
+    /**
+     * Staging root key.
+     */
+    static final Key STAGING = new Key.From(".staging");
+
+    /**
+     * Storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Writes coordination.
+     */
+    private final KeyWrites writes;
+
+    /**
+     * Ctor.
+     * @param storage Storage
+     * @param writes Writes coordination
+     */
+    public CoordinatedUpload(final Storage storage, final KeyWrites writes) {
+        this.storage = storage;
+        this.writes = writes;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final Key key = new KeyFromPath(new RequestLineFrom(line).uri().getPath());
+        final Key tmp = new Key.From(CoordinatedUpload.STAGING, UUID.randomUUID().toString());
+        return new AsyncResponse(
+            this.writes.write(
+                key,
+                () -> this.storage.save(tmp, new ContentWithSize(body, headers))
+                    .thenApply(nothing -> tmp),
+                (staged, newer) -> {
+                    final CompletableFuture<Void> res;
+                    if (newer) {
+                        res = this.storage.move(staged, key);
+                    } else {
+                        res = this.storage.delete(staged);
+                    }
+                    return res;
+                }
+            ).thenApply(nothing -> new RsWithStatus(RsStatus.CREATED))
+        );
+    }
+}
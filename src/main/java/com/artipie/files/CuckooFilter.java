@@ -0,0 +1,330 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cuckoo filter of strings: approximate set membership with deletions.
+ * <p>
+ * Every item is stored as 16 bits fingerprint in one of two buckets of four
+ * slots, so false positive rate is about 0.01% and there are no false
+ * negatives as long as only added items are removed. Lookups are optimistic
+ * reads without locking, modifications are exclusive. If an item can not be
+ * placed because the filter is too full, the filter overflows and reports
+ * every item as possibly present from then on, it should be replaced with
+ * {@link #larger()} one. Adding the same item twice takes two slots, so
+ * items should be added only once.
+ * </p>
+ * @since 0.8
+ */
+public final class CuckooFilter {
+
+    /**
+     * Slots per bucket.
+     */
+    private static final int SLOTS = 4;
+
+    /**
+     * Max relocations of insertion.
+     */
+    private static final int KICKS = 500;
+
+    /**
+     * Fingerprints table.
+     */
+    private final short[] table;
+
+    /**
+     * Buckets index mask.
+     */
+    private final int mask;
+
+    /**
+     * Table lock.
+     */
+    private final StampedLock lock;
+
+    /**
+     * Whether filter overflowed.
+     */
+    private boolean overflow;
+
+    /**
+     * Ctor, table is sized to stay below 90% load at capacity.
+     * @param capacity Expected max items count
+     */
+    public CuckooFilter(final int capacity) {
+        this(
+            new short[
+                Integer.highestOneBit(Math.max(1, (int) (capacity * 10L / 36))) * 2
+                    * CuckooFilter.SLOTS
+            ],
+            false
+        );
+    }
+
+    /**
+     * Ctor.
+     * @param table Fingerprints table, buckets count is power of two
+     * @param overflow Whether filter overflowed
+     */
+    private CuckooFilter(final short[] table, final boolean overflow) {
+        this.table = table;
+        this.mask = table.length / CuckooFilter.SLOTS - 1;
+        this.lock = new StampedLock();
+        this.overflow = overflow;
+    }
+
+    /**
+     * Restore filter from snapshot.
+     * @param snapshot Snapshot
+     * @return Filter
+     */
+    public static CuckooFilter restore(final byte[] snapshot) {
+        final ByteBuffer buf = ByteBuffer.wrap(snapshot);
+        final boolean overflow = buf.get() != 0;
+        final short[] table = new short[buf.getInt()];
+        buf.asShortBuffer().get(table);
+        return new CuckooFilter(table, overflow);
+    }
+
+    /**
+     * New empty filter with twice as many buckets.
+     * @return Filter
+     */
+    public CuckooFilter larger() {
+        return new CuckooFilter(new short[this.table.length * 2], false);
+    }
+
+    /**
+     * Whether the filter overflowed and reports every item as present.
+     * @return True if overflowed
+     */
+    public boolean overflowed() {
+        final long stamp = this.lock.readLock();
+        try {
+            return this.overflow;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Whether the item might be in the filter.
+     * @param item Item
+     * @return False if the item is definitely not in the filter
+     */
+    public boolean mightContain(final String item) {
+        final long hash = CuckooFilter.hash(item);
+        final short print = CuckooFilter.fingerprint(hash);
+        final int first = (int) hash & this.mask;
+        final int second = this.alternate(first, print);
+        long stamp = this.lock.tryOptimisticRead();
+        boolean res = this.lookup(first, second, print);
+        if (!this.lock.validate(stamp)) {
+            stamp = this.lock.readLock();
+            try {
+                res = this.lookup(first, second, print);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Add item.
+     * @param item Item
+     */
+    public void add(final String item) {
+        final long hash = CuckooFilter.hash(item);
+        short print = CuckooFilter.fingerprint(hash);
+        int bucket = (int) hash & this.mask;
+        final long stamp = this.lock.writeLock();
+        try {
+            if (!this.overflow && !this.put(bucket, print)) {
+                bucket = this.alternate(bucket, print);
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                int kick = 0;
+                while (!this.put(bucket, print)) {
+                    if (kick == CuckooFilter.KICKS) {
+                        this.overflow = true;
+                        break;
+                    }
+                    final int slot = bucket * CuckooFilter.SLOTS
+                        + random.nextInt(CuckooFilter.SLOTS);
+                    final short evicted = this.table[slot];
+                    this.table[slot] = print;
+                    print = evicted;
+                    bucket = this.alternate(bucket, print);
+                    kick += 1;
+                }
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove item, it must be added before.
+     * @param item Item
+     */
+    public void remove(final String item) {
+        final long hash = CuckooFilter.hash(item);
+        final short print = CuckooFilter.fingerprint(hash);
+        final int first = (int) hash & this.mask;
+        final long stamp = this.lock.writeLock();
+        try {
+            if (!this.overflow && !this.clear(first, print)) {
+                this.clear(this.alternate(first, print), print);
+            }
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Snapshot of the filter.
+     * @return Snapshot bytes
+     */
+    public byte[] snapshot() {
+        final long stamp = this.lock.readLock();
+        try {
+            final ByteBuffer buf = ByteBuffer.allocate(5 + this.table.length * 2);
+            buf.put((byte) (this.overflow ? 1 : 0));
+            buf.putInt(this.table.length);
+            buf.asShortBuffer().put(this.table);
+            return buf.array();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Look fingerprint up in two buckets.
+     * @param first First bucket
+     * @param second Second bucket
+     * @param print Fingerprint
+     * @return True if found or filter overflowed
+     */
+    private boolean lookup(final int first, final int second, final short print) {
+        boolean res = this.overflow;
+        for (int slot = 0; slot < CuckooFilter.SLOTS && !res; slot += 1) {
+            res = this.table[first * CuckooFilter.SLOTS + slot] == print
+                || this.table[second * CuckooFilter.SLOTS + slot] == print;
+        }
+        return res;
+    }
+
+    /**
+     * Put fingerprint into free slot of the bucket.
+     * @param bucket Bucket
+     * @param print Fingerprint
+     * @return False if bucket is full
+     */
+    private boolean put(final int bucket, final short print) {
+        boolean res = false;
+        for (int slot = 0; slot < CuckooFilter.SLOTS; slot += 1) {
+            if (this.table[bucket * CuckooFilter.SLOTS + slot] == 0) {
+                this.table[bucket * CuckooFilter.SLOTS + slot] = print;
+                res = true;
+                break;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Clear slot of the bucket with fingerprint.
+     * @param bucket Bucket
+     * @param print Fingerprint
+     * @return False if fingerprint was not found
+     */
+    private boolean clear(final int bucket, final short print) {
+        boolean res = false;
+        for (int slot = 0; slot < CuckooFilter.SLOTS; slot += 1) {
+            if (this.table[bucket * CuckooFilter.SLOTS + slot] == print) {
+                this.table[bucket * CuckooFilter.SLOTS + slot] = 0;
+                res = true;
+                break;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Alternate bucket of fingerprint.
+     * @param bucket Bucket
+     * @param print Fingerprint
+     * @return Other bucket
+     */
+    private int alternate(final int bucket, final short print) {
+        return (bucket ^ (int) CuckooFilter.mix(print)) & this.mask;
+    }
+
+    /**
+     * Non-zero fingerprint of hash.
+     * @param hash Hash
+     * @return Fingerprint
+     */
+    private static short fingerprint(final long hash) {
+        short res = (short) (hash >>> 48);
+        if (res == 0) {
+            res = 1;
+        }
+        return res;
+    }
+
+    /**
+     * Hash of the string, FNV-1a of chars with final mixing.
+     * @param item String
+     * @return Hash
+     */
+    private static long hash(final String item) {
+        long res = 0xcbf29ce484222325L;
+        for (int idx = 0; idx < item.length(); idx += 1) {
+            res ^= item.charAt(idx);
+            res *= 0x100000001b3L;
+        }
+        return CuckooFilter.mix(res);
+    }
+
+    /**
+     * Bits mixing finalizer of MurmurHash3.
+     * @param value Value
+     * @return Mixed value
+     */
+    private static long mix(final long value) {
+        long res = value;
+        res ^= res >>> 33;
+        res *= 0xff51afd7ed558ccdL;
+        res ^= res >>> 33;
+        res *= 0xc4ceb9fe1a85ec53L;
+        res ^= res >>> 33;
+        return res;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ext.Digests;
+import io.reactivex.Flowable;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Storage decorator recording SHA-256 digest and size of saved content, so
+ * {@link Scrubber} can verify it later. Digest is computed while content is
+ * streamed to origin storage and recorded only when the save succeeds. The
+ * write is marked as pending before the save and the marker is cleared with
+ * the record, so content of aborted writes is not trusted by the scrubber.
+ * Records follow moved and deleted keys. Wrap cache storage of
+ * {@link FileProxySlice} or storage of {@link FilesSlice} with it.
+ * @since 0.8
+ */
+public final class DigestStorage implements Storage {
+
+    /**
+     * Origin storage.
+     */
+    private final Storage origin;
+
+    /**
+     * Checksum records.
+     */
+    private final Checksums checksums;
+
+    /**
+     * Ctor.
+     * @param origin Origin storage
+     */
+    public DigestStorage(final Storage origin) {
+        this.origin = origin;
+        this.checksums = new Checksums(origin);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(final Key key) {
+        return this.origin.exists(key);
+    }
+
+    @Override
+    public CompletableFuture<Collection<Key>> list(final Key prefix) {
+        return this.origin.list(prefix);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(final Key key, final Content content) {
+        final MessageDigest digest = Digests.SHA256.get();
+        final AtomicLong size = new AtomicLong();
+        return this.checksums.begin(key).thenCompose(
+            started -> this.origin.save(
+                key,
+                new Content.From(
+                    content.size(),
+                    Flowable.fromPublisher(content).doOnNext(
+                        buf -> {
+                            size.addAndGet(buf.remaining());
+                            digest.update(buf.duplicate());
+                        }
+                    )
+                )
+            )
+        ).thenCompose(nothing -> this.checksums.save(key, digest.digest(), size.get()));
+    }
+
+    @Override
+    public CompletableFuture<Void> move(final Key source, final Key destination) {
+        return this.origin.move(source, destination)
+            .thenCompose(nothing -> this.checksums.move(source, destination));
+    }
+
+    @Override
+    public CompletableFuture<Long> size(final Key key) {
+        return this.origin.size(key);
+    }
+
+    @Override
+    public CompletableFuture<Content> value(final Key key) {
+        return this.origin.value(key);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final Key key) {
+        return this.origin.delete(key).thenCompose(nothing -> this.checksums.delete(key));
+    }
+
+    @Override
+    public <T> CompletionStage<T> exclusively(final Key key,
+        final Function<Storage, CompletionStage<T>> operation) {
+        return this.origin.exclusively(
+            key, storage -> operation.apply(new DigestStorage(storage))
+        );
+    }
+}
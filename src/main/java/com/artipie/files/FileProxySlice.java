@@ -24,6 +24,7 @@
 package com.artipie.files;
 
 import com.artipie.asto.Content;
+import com.artipie.asto.Key;
 import com.artipie.asto.Storage;
 import com.artipie.asto.cache.Cache;
 import com.artipie.asto.cache.CacheControl;
@@ -45,20 +46,37 @@ import com.artipie.http.slice.KeyFromPath;
 import io.reactivex.Flowable;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 import org.reactivestreams.Publisher;
 
 /**
  * Binary files proxy {@link Slice} implementation.
+ * Request phases are traced with {@link Tracer} if it is configured: cache
+ * load, upstream time to first byte, upstream body transfer (it is saved to
+ * cache storage while transferred) and response transfer.
  * @since 0.4
  * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
  */
 public final class FileProxySlice implements Slice {
 
+    /**
+     * Cache outcome header: if request has it, response has it too with
+     * `HIT` value for content served from cache, `MISS` for content fetched
+     * from remote or not found and `FALLBACK` for cached content served
+     * because remote failed. Used by {@link AccessLogSlice}.
+     */
+    static final String OUTCOME = "X-Artipie-Cache";
+
     /**
      * Remote slice.
      */
@@ -69,6 +87,16 @@ public final class FileProxySlice implements Slice {
      */
     private final Cache cache;
 
+    /**
+     * Stale-while-revalidate cache if enabled.
+     */
+    private final Optional<StaleWhileRevalidate> stale;
+
+    /**
+     * Tracer of request phases.
+     */
+    private final Tracer tracer;
+
     /**
      * New files proxy slice.
      * @param clients HTTP clients
@@ -79,7 +107,8 @@ public final class FileProxySlice implements Slice {
     }
 
     /**
-     * New files proxy slice.
+     * New files proxy slice with remote guarded by default circuit breaker,
+     * use {@link Builder} for other configurations.
      * @param clients HTTP clients
      * @param remote Remote URI
      * @param auth Authenticator
@@ -89,8 +118,12 @@ public final class FileProxySlice implements Slice {
     public FileProxySlice(final ClientSlices clients, final URI remote,
         final Authenticator auth, final Storage asto) {
         this(
-            new AuthClientSlice(new UriClientSlice(clients, remote), auth),
-            new FromRemoteCache(asto)
+            new CircuitBreakerSlice(
+                new AuthClientSlice(new UriClientSlice(clients, remote), auth),
+                new CircuitBreaker()
+            ),
+            new FromRemoteCache(asto),
+            Tracer.NOP
         );
     }
 
@@ -101,55 +134,332 @@ public final class FileProxySlice implements Slice {
      * @param cache Cache
      */
     FileProxySlice(final Slice remote, final Cache cache) {
+        this(remote, cache, Tracer.NOP);
+    }
+
+    /**
+     * Primary ctor. If cache is {@link StaleWhileRevalidate}, cached content
+     * is served in stale-while-revalidate mode.
+     * @param remote Remote slice
+     * @param cache Cache
+     * @param tracer Tracer of request phases
+     */
+    public FileProxySlice(final Slice remote, final Cache cache, final Tracer tracer) {
         this.remote = remote;
         this.cache = cache;
+        if (cache instanceof StaleWhileRevalidate) {
+            this.stale = Optional.of((StaleWhileRevalidate) cache);
+        } else {
+            this.stale = Optional.empty();
+        }
+        this.tracer = tracer;
     }
 
     @Override
     public Response response(
-        final String line, final Iterable<Map.Entry<String, String>> ignored,
+        final String line, final Iterable<Map.Entry<String, String>> rqheaders,
         final Publisher<ByteBuffer> pub
     ) {
-        final AtomicReference<Headers> headers = new AtomicReference<>();
-        return new AsyncResponse(
-            this.cache.load(
-                new KeyFromPath(new RequestLineFrom(line).uri().getPath()),
-                new Remote.WithErrorHandling(
-                    () -> {
-                        final CompletableFuture<Optional<? extends Content>> promise =
-                            new CompletableFuture<>();
-                        this.remote.response(line, Headers.EMPTY, Content.EMPTY).send(
-                            (rsstatus, rsheaders, rsbody) -> {
-                                final CompletableFuture<Void> term = new CompletableFuture<>();
-                                headers.set(rsheaders);
-                                if (rsstatus.success()) {
-                                    final Flowable<ByteBuffer> body = Flowable.fromPublisher(rsbody)
-                                        .doOnError(term::completeExceptionally)
-                                        .doOnTerminate(() -> term.complete(null));
-                                    promise.complete(Optional.of(new Content.From(body)));
-                                } else {
-                                    promise.complete(Optional.empty());
-                                }
-                                return term;
-                            }
+        final Key key = new KeyFromPath(new RequestLineFrom(line).uri().getPath());
+        final AtomicReference<String> outcome = new AtomicReference<>("HIT");
+        final Span span = this.tracer.span("proxy").tag("key", key.string());
+        final CompletionStage<Response> res;
+        if (this.stale.isPresent()) {
+            final Span lookup = span.child("cache.lookup");
+            res = this.stale.get().cached(
+                key,
+                () -> {
+                    final Span refresh = this.tracer.span("proxy.refresh")
+                        .tag("key", key.string());
+                    return this.cache.load(
+                        key,
+                        this.remote(
+                            line, key, new AtomicReference<>(Headers.EMPTY),
+                            new AtomicReference<>(), refresh
+                        ),
+                        CacheControl.Standard.ALWAYS
+                    ).whenComplete((content, throwable) -> refresh.end());
+                }
+            ).thenCompose(
+                cached -> {
+                    lookup.tag("hit", cached.isPresent()).end();
+                    final CompletionStage<Response> rsp;
+                    if (cached.isPresent()) {
+                        rsp = CompletableFuture.completedFuture(
+                            new RsFull(RsStatus.OK, Headers.EMPTY, cached.get())
                         );
-                        return promise;
+                    } else {
+                        rsp = this.load(line, key, outcome, span);
                     }
-                ),
-                CacheControl.Standard.ALWAYS
-            ).handle(
-                (content, throwable) -> {
-                    final CompletableFuture<Response> result = new CompletableFuture<>();
-                    if (throwable == null && content.isPresent()) {
-                        result.complete(
-                            new RsFull(RsStatus.OK, new Headers.From(headers.get()), content.get())
-                        );
+                    return rsp;
+                }
+            );
+        } else {
+            res = this.load(line, key, outcome, span);
+        }
+        final Response rsp = new AsyncResponse(res);
+        final boolean report = StreamSupport.stream(rqheaders.spliterator(), false)
+            .anyMatch(header -> FileProxySlice.OUTCOME.equalsIgnoreCase(header.getKey()));
+        final Response result;
+        if (report || this.tracer != Tracer.NOP) {
+            result = connection -> rsp.send(
+                (status, headers, body) -> {
+                    span.tag("status", status.code()).tag("outcome", outcome.get());
+                    final Headers out;
+                    if (report) {
+                        out = new Headers.From(headers, FileProxySlice.OUTCOME, outcome.get());
                     } else {
-                        result.complete(new RsWithStatus(RsStatus.NOT_FOUND));
+                        out = headers;
                     }
-                    return result;
+                    final Span send = span.child("response");
+                    final AtomicLong bytes = new AtomicLong();
+                    return connection.accept(
+                        status, out,
+                        Flowable.fromPublisher(body)
+                            .doOnNext(buf -> bytes.addAndGet(buf.remaining()))
+                            .doFinally(() -> send.tag("bytes", bytes.get()).end())
+                    );
+                }
+            ).whenComplete((nothing, throwable) -> span.end());
+        } else {
+            result = rsp;
+        }
+        return result;
+    }
+
+    /**
+     * Load content through the cache.
+     * @param line Request line
+     * @param key Key
+     * @param outcome Cache outcome holder
+     * @param span Request span
+     * @return Response with cached or remote content
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    private CompletionStage<Response> load(final String line, final Key key,
+        final AtomicReference<String> outcome, final Span span) {
+        final AtomicReference<Headers> headers = new AtomicReference<>(Headers.EMPTY);
+        outcome.set("FALLBACK");
+        final Span load = span.child("cache.load");
+        return this.cache.load(
+            key, this.remote(line, key, headers, outcome, load), CacheControl.Standard.ALWAYS
+        ).handle(
+            (content, throwable) -> {
+                load.tag("found", throwable == null && content.isPresent()).end();
+                final CompletableFuture<Response> result = new CompletableFuture<>();
+                if (throwable == null && content.isPresent()) {
+                    result.complete(
+                        new RsFull(RsStatus.OK, new Headers.From(headers.get()), content.get())
+                    );
+                } else {
+                    outcome.set("MISS");
+                    result.complete(new RsWithStatus(RsStatus.NOT_FOUND));
                 }
-            ).thenCompose(Function.identity())
+                return result;
+            }
+        ).thenCompose(Function.identity());
+    }
+
+    /**
+     * Remote content.
+     * @param line Request line
+     * @param key Key
+     * @param headers Remote response headers holder
+     * @param outcome Cache outcome holder
+     * @param span Parent span
+     * @return Remote
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    private Remote remote(final String line, final Key key,
+        final AtomicReference<Headers> headers, final AtomicReference<String> outcome,
+        final Span span) {
+        return new Remote.WithErrorHandling(
+            () -> {
+                final CompletableFuture<Optional<? extends Content>> promise =
+                    new CompletableFuture<>();
+                final Span upstream = span.child("upstream");
+                this.remote.response(line, Headers.EMPTY, Content.EMPTY).send(
+                    (rsstatus, rsheaders, rsbody) -> {
+                        upstream.tag("status", rsstatus.code()).end();
+                        final CompletableFuture<Void> term = new CompletableFuture<>();
+                        headers.set(rsheaders);
+                        if (rsstatus.success()) {
+                            outcome.set("MISS");
+                            final Span transfer = span.child("upstream.body");
+                            final AtomicLong bytes = new AtomicLong();
+                            final Flowable<ByteBuffer> body = Flowable.fromPublisher(rsbody)
+                                .doOnNext(buf -> bytes.addAndGet(buf.remaining()))
+                                .doOnComplete(() -> this.stale.ifPresent(swr -> swr.fetched(key)))
+                                .doOnError(term::completeExceptionally)
+                                .doOnTerminate(() -> term.complete(null))
+                                .doFinally(() -> transfer.tag("bytes", bytes.get()).end());
+                            promise.complete(Optional.of(new Content.From(body)));
+                        } else {
+                            promise.complete(Optional.empty());
+                        }
+                        return term;
+                    }
+                ).whenComplete(
+                    (nothing, throwable) -> {
+                        if (throwable != null) {
+                            upstream.tag("error", throwable.getClass().getSimpleName()).end();
+                            promise.complete(Optional.empty());
+                        }
+                    }
+                );
+                return promise;
+            }
         );
     }
+    /**
+     * Builder of files proxy slice. Remote is required, it is guarded by
+     * circuit breaker, default one if not set. Cache is {@link Cache#NOP} and
+     * tracer is {@link Tracer#NOP} if not set.
+     * <p>
+     * Example of proxy with several hedged upstreams and stale-while-revalidate
+     * cache:
+     * </p>
+     * <pre>
+     * new FileProxySlice.Builder()
+     *     .remotes(clients, uris, auth)
+     *     .cache(new StaleWhileRevalidate(storage, fresh, stale, error))
+     *     .tracer(tracer)
+     *     .build();
+     * </pre>
+     * @since 0.8
+     */
+    public static final class Builder {
+
+        /**
+         * Remote slice.
+         */
+        private Slice remote;
+
+        /**
+         * Circuit breaker of remote.
+         */
+        private CircuitBreaker breaker;
+
+        /**
+         * Cache.
+         */
+        private Cache cache;
+
+        /**
+         * Tracer.
+         */
+        private Tracer tracer;
+
+        /**
+         * Ctor.
+         */
+        public Builder() {
+            this.breaker = new CircuitBreaker();
+            this.cache = Cache.NOP;
+            this.tracer = Tracer.NOP;
+        }
+
+        /**
+         * Single remote.
+         * @param clients HTTP clients
+         * @param uri Remote URI
+         * @param auth Authenticator
+         * @return This builder
+         */
+        public Builder remote(final ClientSlices clients, final URI uri,
+            final Authenticator auth) {
+            return this.remote(new AuthClientSlice(new UriClientSlice(clients, uri), auth));
+        }
+
+        /**
+         * Several remotes: requests go to the upstream with the best latency
+         * and errors score and are hedged to the next one when the first one
+         * is slow, see {@link HedgedSlice}.
+         * @param clients HTTP clients
+         * @param uris Remote URIs
+         * @param auth Authenticator
+         * @return This builder
+         */
+        public Builder remotes(final ClientSlices clients, final Collection<URI> uris,
+            final Authenticator auth) {
+            return this.upstreams(
+                uris.stream()
+                    .map(uri -> new Upstream(clients, uri, auth))
+                    .collect(Collectors.toList())
+            );
+        }
+
+        /**
+         * Several configured upstreams, e.g. with {@link Bulkhead}, requests
+         * are hedged between them as with {@link HedgedSlice}.
+         * @param upstreams Upstreams
+         * @return This builder
+         */
+        public Builder upstreams(final List<Upstream> upstreams) {
+            return this.remote(new HedgedSlice(upstreams));
+        }
+
+        /**
+         * Remote slice.
+         * @param slice Remote slice
+         * @return This builder
+         */
+        public Builder remote(final Slice slice) {
+            this.remote = slice;
+            return this;
+        }
+
+        /**
+         * Circuit breaker of remote: while it is open, content is served from
+         * cache without calling remote.
+         * @param circuit Circuit breaker
+         * @return This builder
+         */
+        public Builder breaker(final CircuitBreaker circuit) {
+            this.breaker = circuit;
+            return this;
+        }
+
+        /**
+         * Cache storage.
+         * @param asto Storage
+         * @return This builder
+         */
+        public Builder storage(final Storage asto) {
+            return this.cache(new FromRemoteCache(asto));
+        }
+
+        /**
+         * Cache, e.g. {@link StaleWhileRevalidate}.
+         * @param value Cache
+         * @return This builder
+         */
+        public Builder cache(final Cache value) {
+            this.cache = value;
+            return this;
+        }
+
+        /**
+         * Tracer of request phases.
+         * @param value Tracer
+         * @return This builder
+         */
+        public Builder tracer(final Tracer value) {
+            this.tracer = value;
+            return this;
+        }
+
+        /**
+         * Build files proxy slice.
+         * @return Slice
+         */
+        public FileProxySlice build() {
+            if (this.remote == null) {
+                throw new IllegalStateException("Remote of files proxy is not set");
+            }
+            return new FileProxySlice(
+                new CircuitBreakerSlice(this.remote, this.breaker), this.cache, this.tracer
+            );
+        }
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracer exporting finished spans to a local file through {@link AccessLog},
+ * so spans are written asynchronously in batches. Each span is a tab
+ * separated line of trace id, span id, parent span id, name, start time,
+ * duration in microseconds and `name=value` tags, tags are escaped with
+ * {@link AccessLog#escape(String)}, so values taken from requests can not
+ * forge lines or fields.
+ * @since 0.8
+ */
+public final class FileTracer implements Tracer {
+
+    /**
+     * Spans log.
+     */
+    private final AccessLog log;
+
+    /**
+     * Ctor.
+     * @param log Spans log
+     */
+    public FileTracer(final AccessLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public Span span(final String name) {
+        return new FileSpan(this.log, FileTracer.id(), "-", name);
+    }
+
+    /**
+     * Random id.
+     * @return Id string
+     */
+    private static String id() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Span written to the log when finished.
+     * @since 0.8
+     */
+    private static final class FileSpan implements Span {
+
+        /**
+         * Spans log.
+         */
+        private final AccessLog log;
+
+        /**
+         * Trace id.
+         */
+        private final String trace;
+
+        /**
+         * Span id.
+         */
+        private final String id;
+
+        /**
+         * Parent span id.
+         */
+        private final String parent;
+
+        /**
+         * Span name.
+         */
+        private final String name;
+
+        /**
+         * Start time.
+         */
+        private final Instant time;
+
+        /**
+         * Start nanoseconds.
+         */
+        private final long start;
+
+        /**
+         * Tags.
+         */
+        private final Queue<String> tags;
+
+        /**
+         * Whether span has ended.
+         */
+        private final AtomicBoolean ended;
+
+        /**
+         * Ctor.
+         * @param log Spans log
+         * @param trace Trace id
+         * @param parent Parent span id
+         * @param name Span name
+         * @checkstyle ParameterNumberCheck (5 lines)
+         */
+        FileSpan(final AccessLog log, final String trace, final String parent,
+            final String name) {
+            this.log = log;
+            this.trace = trace;
+            this.id = FileTracer.id();
+            this.parent = parent;
+            this.name = name;
+            this.time = Instant.now();
+            this.start = System.nanoTime();
+            this.tags = new ConcurrentLinkedQueue<>();
+            this.ended = new AtomicBoolean();
+        }
+
+        @Override
+        public Span child(final String child) {
+            return new FileSpan(this.log, this.trace, this.id, child);
+        }
+
+        @Override
+        public Span tag(final String tag, final Object value) {
+            this.tags.add(
+                String.format(
+                    "%s=%s", AccessLog.escape(tag), AccessLog.escape(String.valueOf(value))
+                )
+            );
+            return this;
+        }
+
+        @Override
+        public void end() {
+            if (this.ended.compareAndSet(false, true)) {
+                final StringBuilder line = new StringBuilder()
+                    .append(this.trace).append('\t')
+                    .append(this.id).append('\t')
+                    .append(this.parent).append('\t')
+                    .append(this.name).append('\t')
+                    .append(this.time.truncatedTo(ChronoUnit.MICROS)).append('\t')
+                    .append(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - this.start));
+                for (final String tag : this.tags) {
+                    line.append('\t').append(tag);
+                }
+                this.log.record(line.toString());
+            }
+        }
+    }
+}
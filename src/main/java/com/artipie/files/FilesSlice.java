@@ -38,14 +38,19 @@ import com.artipie.http.rt.ByMethodsRule;
 import com.artipie.http.rt.RtRule;
 import com.artipie.http.rt.RtRulePath;
 import com.artipie.http.rt.SliceRoute;
-import com.artipie.http.slice.SliceDelete;
 import com.artipie.http.slice.SliceDownload;
 import com.artipie.http.slice.SliceSimple;
-import com.artipie.http.slice.SliceUpload;
 import com.artipie.http.slice.SliceWithHeaders;
+import java.time.Duration;
 
 /**
  * A {@link Slice} which servers binary files.
+ * <p>
+ * Internal keys of the storage, under reserved roots, see
+ * {@link InternalKeys}, are not served: requests to them are answered with
+ * `404 Not Found`. Stale resumable upload sessions are removed in
+ * background unless {@link Uploads} are passed to the constructor.
+ * </p>
  *
  * @since 0.1
  * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
@@ -60,6 +65,15 @@ public final class FilesSlice extends Slice.Wrap {
         this(storage, Permissions.FREE, Authentication.ANONYMOUS);
     }
 
+    /**
+     * Ctor with cached authentication and permission decisions.
+     * @param storage The storage
+     * @param cache Cache of authentication and permissions
+     */
+    public FilesSlice(final Storage storage, final AuthCache cache) {
+        this(storage, cache, cache);
+    }
+
     /**
      * Ctor used by Artipie server which knows `Authentication` implementation.
      * @param storage The storage. And default parameters for free access.
@@ -67,33 +81,128 @@ public final class FilesSlice extends Slice.Wrap {
      * @param auth Auth details.
      */
     public FilesSlice(final Storage storage, final Permissions perms, final Authentication auth) {
+        this(storage, perms, auth, new KeyWrites());
+    }
+
+    /**
+     * Ctor.
+     * @param storage The storage
+     * @param perms Access permissions
+     * @param auth Auth details
+     * @param writes Writes coordination, concurrent uploads and deletes of the
+     *  same key are serialized and the one started last wins
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public FilesSlice(final Storage storage, final Permissions perms,
+        final Authentication auth, final KeyWrites writes) {
+        this(storage, perms, auth, writes, RateLimits.UNLIMITED);
+    }
+
+    /**
+     * Ctor.
+     * @param storage The storage
+     * @param perms Access permissions
+     * @param auth Auth details
+     * @param writes Writes coordination
+     * @param limits Requests rate and bandwidth limits of each user
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public FilesSlice(final Storage storage, final Permissions perms,
+        final Authentication auth, final KeyWrites writes, final RateLimits limits) {
+        this(storage, perms, auth, writes, limits, Tracer.NOP);
+    }
+
+    /**
+     * Ctor.
+     * @param storage The storage
+     * @param perms Access permissions
+     * @param auth Auth details
+     * @param writes Writes coordination
+     * @param limits Requests rate and bandwidth limits of each user
+     * @param tracer Tracer of routes, including authentication
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public FilesSlice(final Storage storage, final Permissions perms,
+        final Authentication auth, final KeyWrites writes, final RateLimits limits,
+        final Tracer tracer) {
+        this(
+            storage, perms, auth, writes, limits, tracer,
+            FilesSlice.cleaned(new Uploads(storage, writes))
+        );
+    }
+
+    /**
+     * Ctor.
+     * @param storage The storage
+     * @param perms Access permissions
+     * @param auth Auth details
+     * @param writes Writes coordination, the same as of uploads
+     * @param limits Requests rate and bandwidth limits of each user
+     * @param tracer Tracer of routes, including authentication
+     * @param uploads Resumable uploads, the caller is responsible for removing
+     *  their stale sessions with {@link Uploads#start(Duration, Duration)}
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public FilesSlice(final Storage storage, final Permissions perms,
+        final Authentication auth, final KeyWrites writes, final RateLimits limits,
+        final Tracer tracer, final Uploads uploads) {
         super(
             new SliceRoute(
+                new RtRulePath(
+                    new InternalKeys(),
+                    new SliceSimple(new RsWithStatus(RsStatus.NOT_FOUND))
+                ),
+                new RtRulePath(
+                    new UploadsSlice.Matches(),
+                    new TracingSlice(
+                        new BasicAuthSlice(
+                            new RateLimitSlice(
+                                new UploadsSlice(uploads),
+                                limits
+                            ),
+                            auth,
+                            new Permission.ByName(perms, Action.Standard.WRITE)
+                        ),
+                        tracer, "files.uploads"
+                    )
+                ),
                 new RtRulePath(
                     ByMethodsRule.Standard.GET,
-                    new BasicAuthSlice(
-                        new SliceWithHeaders(
-                            new SliceDownload(storage),
-                            new Headers.From(new ContentType("application/octet-stream"))
+                    new TracingSlice(
+                        new BasicAuthSlice(
+                            new RateLimitSlice(
+                                new SliceWithHeaders(
+                                    new SliceDownload(storage),
+                                    new Headers.From(new ContentType("application/octet-stream"))
+                                ),
+                                limits
+                            ),
+                            auth,
+                            new Permission.ByName(perms, Action.Standard.READ)
                         ),
-                        auth,
-                        new Permission.ByName(perms, Action.Standard.READ)
+                        tracer, "files.get"
                     )
                 ),
                 new RtRulePath(
                     ByMethodsRule.Standard.PUT,
-                    new BasicAuthSlice(
-                        new SliceUpload(storage),
-                        auth,
-                        new Permission.ByName(perms, Action.Standard.WRITE)
+                    new TracingSlice(
+                        new BasicAuthSlice(
+                            new RateLimitSlice(new CoordinatedUpload(storage, writes), limits),
+                            auth,
+                            new Permission.ByName(perms, Action.Standard.WRITE)
+                        ),
+                        tracer, "files.put"
                     )
                 ),
                 new RtRulePath(
                     ByMethodsRule.Standard.DELETE,
-                    new BasicAuthSlice(
-                        new SliceDelete(storage),
-                        auth,
-                        new Permission.ByName(perms, Action.Standard.DELETE)
+                    new TracingSlice(
+                        new BasicAuthSlice(
+                            new RateLimitSlice(new CoordinatedDelete(storage, writes), limits),
+                            auth,
+                            new Permission.ByName(perms, Action.Standard.DELETE)
+                        ),
+                        tracer, "files.delete"
                     )
                 ),
                 new RtRulePath(
@@ -103,4 +212,14 @@ public final class FilesSlice extends Slice.Wrap {
             )
         );
     }
+
+    /**
+     * Start removing upload sessions older than 1 day every hour.
+     * @param uploads Uploads
+     * @return The same uploads
+     */
+    private static Uploads cleaned(final Uploads uploads) {
+        uploads.start(Duration.ofHours(1), Duration.ofDays(1));
+        return uploads;
+    }
 }
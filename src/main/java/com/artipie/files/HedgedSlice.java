@@ -0,0 +1,283 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.Connection;
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.rs.RsStatus;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice which sends request to the best of several upstreams and hedges it
+ * to the next best upstream when the first one does not respond in time.
+ * <p>
+ * Upstreams are ordered by {@link Upstream#score()}. The hedge delay is the
+ * configured latency percentile of the primary upstream, or the initial
+ * delay when the primary has no latency samples yet. An upstream failure
+ * or non-successful status launches the next upstream immediately. The first
+ * successful response wins, the bodies of losing responses are cancelled.
+ * When every upstream failed, the status of the last one is returned.
+ * </p>
+ * <p>
+ * Hedged requests are sent twice, so this slice is meant for idempotent
+ * requests with empty bodies, such as proxied GETs.
+ * </p>
+ * @since 0.8
+ */
+public final class HedgedSlice implements Slice {
+
+    /**
+     * Upstreams.
+     */
+    private final List<Upstream> upstreams;
+
+    /**
+     * Latency quantile of the primary upstream used as hedge delay.
+     */
+    private final double quantile;
+
+    /**
+     * Hedge delay used when there are no latency samples.
+     */
+    private final Duration initial;
+
+    /**
+     * Ctor.
+     * @param upstreams Upstreams
+     */
+    public HedgedSlice(final List<Upstream> upstreams) {
+        // @checkstyle MagicNumberCheck (1 line)
+        this(upstreams, 0.95, Duration.ofMillis(500));
+    }
+
+    /**
+     * Ctor.
+     * @param upstreams Upstreams
+     * @param quantile Latency quantile of the primary upstream used as hedge delay
+     * @param initial Hedge delay used when there are no latency samples
+     */
+    public HedgedSlice(
+        final List<Upstream> upstreams, final double quantile, final Duration initial
+    ) {
+        if (upstreams.isEmpty()) {
+            throw new IllegalArgumentException("At least one upstream is required");
+        }
+        this.upstreams = upstreams;
+        this.quantile = quantile;
+        this.initial = initial;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        return connection -> {
+            final List<Upstream> ordered = new ArrayList<>(this.upstreams);
+            ordered.sort(Comparator.comparingDouble(Upstream::score));
+            return new Race(
+                ordered, connection,
+                upstream -> upstream.response(line, headers, body)
+            ).start(
+                ordered.get(0).percentile(this.quantile).orElse(this.initial.toNanos())
+            );
+        };
+    }
+
+    /**
+     * Race of requests to upstreams for one client request.
+     * @since 0.8
+     */
+    private static final class Race {
+
+        /**
+         * Upstreams ordered by preference.
+         */
+        private final List<Upstream> upstreams;
+
+        /**
+         * Client connection.
+         */
+        private final Connection connection;
+
+        /**
+         * Request to upstream.
+         */
+        private final Function<Upstream, Response> request;
+
+        /**
+         * Index of the next upstream to launch.
+         */
+        private final AtomicInteger next;
+
+        /**
+         * Attempts in flight.
+         */
+        private final AtomicInteger alive;
+
+        /**
+         * Whether some response was accepted.
+         */
+        private final AtomicBoolean won;
+
+        /**
+         * Hedge timer.
+         */
+        private final AtomicReference<Disposable> timer;
+
+        /**
+         * Result of the race.
+         */
+        private final CompletableFuture<Void> result;
+
+        /**
+         * Ctor.
+         * @param upstreams Upstreams ordered by preference
+         * @param connection Client connection
+         * @param request Request to upstream
+         */
+        Race(
+            final List<Upstream> upstreams, final Connection connection,
+            final Function<Upstream, Response> request
+        ) {
+            this.upstreams = upstreams;
+            this.connection = connection;
+            this.request = request;
+            this.next = new AtomicInteger();
+            this.alive = new AtomicInteger();
+            this.won = new AtomicBoolean();
+            this.timer = new AtomicReference<>();
+            this.result = new CompletableFuture<>();
+        }
+
+        /**
+         * Start the race.
+         * @param delay Hedge delay in nanoseconds
+         * @return Completion of the winner response sending
+         */
+        CompletionStage<Void> start(final long delay) {
+            if (this.upstreams.size() > 1) {
+                this.timer.set(
+                    Completable.timer(delay, TimeUnit.NANOSECONDS).subscribe(this::launch)
+                );
+            }
+            this.launch();
+            return this.result;
+        }
+
+        /**
+         * Launch request to the next upstream if the race is not finished yet.
+         */
+        private void launch() {
+            final int idx = this.next.getAndIncrement();
+            if (idx < this.upstreams.size() && !this.won.get()) {
+                this.alive.incrementAndGet();
+                this.request.apply(this.upstreams.get(idx)).send(
+                    (status, headers, body) -> this.accept(status, headers, body)
+                ).whenComplete(
+                    (nothing, throwable) -> {
+                        if (throwable != null) {
+                            this.lose(throwable);
+                        }
+                    }
+                );
+            }
+        }
+
+        /**
+         * Accept upstream response.
+         * @param status Status
+         * @param headers Headers
+         * @param body Body
+         * @return Completion of response sending
+         */
+        private CompletionStage<Void> accept(
+            final RsStatus status, final Headers headers, final Publisher<ByteBuffer> body
+        ) {
+            final CompletionStage<Void> res;
+            if ((status.success() || this.last()) && this.won.compareAndSet(false, true)) {
+                final Disposable hedge = this.timer.get();
+                if (hedge != null) {
+                    hedge.dispose();
+                }
+                res = this.connection.accept(status, headers, body).whenComplete(
+                    (nothing, throwable) -> {
+                        if (throwable == null) {
+                            this.result.complete(null);
+                        } else {
+                            this.result.completeExceptionally(throwable);
+                        }
+                    }
+                );
+            } else {
+                Flowable.fromPublisher(body).take(0).subscribe();
+                res = CompletableFuture.allOf();
+                this.lose(new IllegalStateException(String.format("Upstream status %s", status)));
+            }
+            return res;
+        }
+
+        /**
+         * Whether the only attempt in flight is the last possible one.
+         * @return True if no other upstream can answer
+         */
+        private boolean last() {
+            return this.alive.get() == 1 && this.next.get() >= this.upstreams.size();
+        }
+
+        /**
+         * Lose an attempt: hedge to the next upstream at once or fail the race
+         * when there are no more upstreams.
+         * @param err Failure reason
+         */
+        private void lose(final Throwable err) {
+            final int left = this.alive.decrementAndGet();
+            if (!this.won.get()) {
+                if (this.next.get() < this.upstreams.size()) {
+                    this.launch();
+                } else if (left == 0 && this.won.compareAndSet(false, true)) {
+                    this.result.completeExceptionally(err);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rt.RtRule;
+import com.artipie.http.slice.KeyFromPath;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rule matching requests to internal keys of the storage: keys under reserved
+ * roots, where upload sessions, staged writes, queues, checksum records,
+ * quarantine and filter snapshots are kept, and paths with `.` or `..`
+ * segments. Such keys must not be served or written by clients. Other keys
+ * starting with dot, e.g. `.well-known` or `.npmrc`, are regular ones.
+ * @since 0.8
+ */
+final class InternalKeys implements RtRule {
+
+    /**
+     * Reserved roots.
+     */
+    private static final Set<String> ROOTS = Collections.unmodifiableSet(
+        new HashSet<>(
+            Arrays.asList(
+                ".uploads", ".staging", ".replication", ".checksums", ".checksums-pending",
+                ".quarantine", ".scrub", ".keyfilter", ".writeback"
+            )
+        )
+    );
+
+    @Override
+    public boolean apply(final String line, final Iterable<Map.Entry<String, String>> headers) {
+        return InternalKeys.internal(
+            new KeyFromPath(new RequestLineFrom(line).uri().getPath()).string()
+        );
+    }
+
+    /**
+     * Whether key is internal.
+     * @param key Key string
+     * @return True if key first part is reserved root or key has dot segments
+     */
+    static boolean internal(final String key) {
+        final String[] parts = key.split("/");
+        boolean res = InternalKeys.ROOTS.contains(parts[0]);
+        for (final String part : parts) {
+            if (res) {
+                break;
+            }
+            res = ".".equals(part) || "..".equals(part);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ValueNotFoundException;
+import com.artipie.asto.ext.CompletableFutureSupport;
+import com.artipie.asto.ext.PublisherAs;
+import com.jcabi.log.Logger;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Storage decorator answering lookups of missing keys from in-memory
+ * {@link CuckooFilter} of existing keys, without touching origin storage.
+ * <p>
+ * Filter is loaded from snapshot or built from storage listing by
+ * {@link #start()}, until then all lookups go to origin storage. Successful
+ * saves, moves and deletes keep the filter current, deletes made while the
+ * filter is built are not applied, so the filter errs only on the side of
+ * false positives. Keys are added only if they did not exist before the
+ * write, so overwrites do not fill the filter. Filter assumes it sees all
+ * writes of the storage, that writes of the same key are not concurrent and
+ * that delete of missing key fails, as it does for {@link FilesSlice}
+ * storage which checks existence under the key write lock.
+ * </p>
+ * <p>
+ * Filter which overflowed answers every lookup with origin storage, so it
+ * is rebuilt from storage listing into a filter twice as large, it is not
+ * saved to snapshot.
+ * </p>
+ * <p>
+ * Snapshot saved by {@link #snapshot()} under `.keyfilter` key is used on
+ * next start instead of the listing, unless storage was changed after it:
+ * the first change after a snapshot leaves a dirty marker. Take snapshots
+ * periodically and on shutdown. Wrap storage of {@link FilesSlice} with it.
+ * </p>
+ * @since 0.8
+ */
+public final class KeyFilterStorage implements Storage {
+
+    /**
+     * Snapshot key.
+     */
+    static final Key SNAPSHOT = new Key.From(".keyfilter", "snapshot");
+
+    /**
+     * Origin storage.
+     */
+    private final Storage origin;
+
+    /**
+     * Expected max keys count.
+     */
+    private final int capacity;
+
+    /**
+     * Ready filter, absent until loaded or built.
+     */
+    private final AtomicReference<CuckooFilter> current;
+
+    /**
+     * Filter being built, absent when not building.
+     */
+    private final AtomicReference<CuckooFilter> building;
+
+    /**
+     * Snapshot generation.
+     */
+    private final AtomicLong generation;
+
+    /**
+     * Generation the dirty marker was left for.
+     */
+    private final AtomicLong marked;
+
+    /**
+     * Last snapshot saving.
+     */
+    private final AtomicReference<CompletableFuture<Void>> snapshots;
+
+    /**
+     * Lookups answered without origin storage.
+     */
+    private final AtomicLong skipped;
+
+    /**
+     * Ctor.
+     * @param origin Origin storage
+     * @param capacity Expected max keys count
+     */
+    public KeyFilterStorage(final Storage origin, final int capacity) {
+        this.origin = origin;
+        this.capacity = capacity;
+        this.current = new AtomicReference<>();
+        this.building = new AtomicReference<>();
+        this.generation = new AtomicLong();
+        this.marked = new AtomicLong(-1);
+        this.snapshots = new AtomicReference<>(CompletableFuture.allOf());
+        this.skipped = new AtomicLong();
+    }
+
+    /**
+     * Ctor of the view sharing the filter.
+     * @param origin Origin storage
+     * @param shared Storage to share filter with
+     */
+    private KeyFilterStorage(final Storage origin, final KeyFilterStorage shared) {
+        this.origin = origin;
+        this.capacity = shared.capacity;
+        this.current = shared.current;
+        this.building = shared.building;
+        this.generation = shared.generation;
+        this.marked = shared.marked;
+        this.snapshots = shared.snapshots;
+        this.skipped = shared.skipped;
+    }
+
+    /**
+     * Load filter from snapshot if it is up to date, build it from storage
+     * listing otherwise.
+     * @return Completion
+     */
+    public CompletionStage<Void> start() {
+        return this.origin.exists(KeyFilterStorage.SNAPSHOT).thenCompose(
+            exists -> {
+                final CompletionStage<Optional<ByteBuffer>> res;
+                if (exists) {
+                    res = this.origin.value(KeyFilterStorage.SNAPSHOT)
+                        .thenCompose(content -> new PublisherAs(content).bytes())
+                        .thenApply(bytes -> Optional.of(ByteBuffer.wrap(bytes)));
+                } else {
+                    res = CompletableFuture.completedFuture(Optional.empty());
+                }
+                return res;
+            }
+        ).thenCompose(
+            snapshot -> {
+                final CompletionStage<Boolean> dirty;
+                if (snapshot.isPresent()) {
+                    dirty = this.origin.exists(
+                        KeyFilterStorage.dirty(snapshot.get().getLong(0))
+                    );
+                } else {
+                    dirty = CompletableFuture.completedFuture(true);
+                }
+                snapshot.ifPresent(buf -> this.generation.set(buf.getLong()));
+                return dirty.thenCompose(
+                    stale -> {
+                        final CompletionStage<Void> res;
+                        if (stale) {
+                            res = this.build(new CuckooFilter(this.capacity));
+                        } else {
+                            final ByteBuffer buf = snapshot.get();
+                            final byte[] table = new byte[buf.remaining()];
+                            buf.get(table);
+                            final CuckooFilter restored = CuckooFilter.restore(table);
+                            if (restored.overflowed()) {
+                                res = this.build(restored.larger());
+                            } else {
+                                this.current.set(restored);
+                                res = CompletableFuture.allOf();
+                            }
+                        }
+                        return res;
+                    }
+                );
+            }
+        );
+    }
+
+    /**
+     * Save snapshot of the filter, does nothing if the filter is not ready
+     * or overflowed.
+     * @return Completion
+     */
+    public CompletionStage<Void> snapshot() {
+        final CompletableFuture<Void> next = new CompletableFuture<>();
+        this.snapshots.getAndSet(next).handle((nothing, throwable) -> nothing).thenCompose(
+            nothing -> {
+                final CuckooFilter filter = this.current.get();
+                final CompletionStage<Void> res;
+                if (filter == null || filter.overflowed()) {
+                    res = CompletableFuture.allOf();
+                } else {
+                    final long gen = this.generation.incrementAndGet();
+                    final byte[] table = filter.snapshot();
+                    res = this.origin.save(
+                        KeyFilterStorage.SNAPSHOT,
+                        new Content.From(
+                            ByteBuffer.allocate(Long.BYTES + table.length)
+                                .putLong(gen).put(table).array()
+                        )
+                    ).thenCompose(
+                        saved -> this.origin.exists(KeyFilterStorage.dirty(gen - 1))
+                    ).thenCompose(
+                        exists -> {
+                            final CompletionStage<Void> deleted;
+                            if (exists) {
+                                deleted = this.origin.delete(KeyFilterStorage.dirty(gen - 1));
+                            } else {
+                                deleted = CompletableFuture.allOf();
+                            }
+                            return deleted;
+                        }
+                    );
+                }
+                return res;
+            }
+        ).whenComplete(
+            (nothing, throwable) -> {
+                if (throwable == null) {
+                    next.complete(null);
+                } else {
+                    next.completeExceptionally(throwable);
+                }
+            }
+        );
+        return next;
+    }
+
+    /**
+     * Count of lookups answered by the filter without origin storage.
+     * @return Count
+     */
+    public long skipped() {
+        return this.skipped.get();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(final Key key) {
+        final CompletableFuture<Boolean> res;
+        if (this.absent(key)) {
+            res = CompletableFuture.completedFuture(false);
+        } else {
+            res = this.origin.exists(key);
+        }
+        return res;
+    }
+
+    @Override
+    public CompletableFuture<Collection<Key>> list(final Key prefix) {
+        return this.origin.list(prefix);
+    }
+
+    @Override
+    public CompletableFuture<Void> save(final Key key, final Content content) {
+        return this.existed(key).thenCompose(
+            existed -> this.origin.save(key, content).thenCompose(
+                nothing -> this.added(key, existed)
+            )
+        );
+    }
+
+    @Override
+    public CompletableFuture<Void> move(final Key source, final Key destination) {
+        return this.existed(destination).thenCompose(
+            existed -> this.origin.move(source, destination).thenCompose(
+                nothing -> this.added(destination, existed)
+            )
+        ).thenCompose(nothing -> this.removed(source));
+    }
+
+    @Override
+    public CompletableFuture<Long> size(final Key key) {
+        final CompletableFuture<Long> res;
+        if (this.absent(key)) {
+            res = new CompletableFutureSupport.Failed<Long>(
+                new ValueNotFoundException(key)
+            ).get();
+        } else {
+            res = this.origin.size(key);
+        }
+        return res;
+    }
+
+    @Override
+    public CompletableFuture<Content> value(final Key key) {
+        final CompletableFuture<Content> res;
+        if (this.absent(key)) {
+            res = new CompletableFutureSupport.Failed<Content>(
+                new ValueNotFoundException(key)
+            ).get();
+        } else {
+            res = this.origin.value(key);
+        }
+        return res;
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final Key key) {
+        return this.origin.delete(key).thenCompose(nothing -> this.removed(key));
+    }
+
+    @Override
+    public <T> CompletionStage<T> exclusively(final Key key,
+        final Function<Storage, CompletionStage<T>> operation) {
+        return this.origin.exclusively(
+            key, storage -> operation.apply(new KeyFilterStorage(storage, this))
+        );
+    }
+
+    /**
+     * Build filter from storage listing, does nothing if another filter is
+     * being built. Filter which overflowed while built is built again twice
+     * as large.
+     * @param filter Empty filter to build
+     * @return Completion
+     */
+    private CompletionStage<Void> build(final CuckooFilter filter) {
+        final CompletionStage<Void> res;
+        if (this.building.compareAndSet(null, filter)) {
+            res = this.origin.list(Key.ROOT).thenApply(
+                keys -> {
+                    keys.forEach(key -> filter.add(key.string()));
+                    this.current.set(filter);
+                    Logger.info(this, "Key filter of %d keys is built", keys.size());
+                    return keys;
+                }
+            ).whenComplete(
+                (keys, throwable) -> this.building.compareAndSet(filter, null)
+            ).thenCompose(
+                keys -> {
+                    final CompletionStage<Void> grown;
+                    if (filter.overflowed()) {
+                        grown = this.build(filter.larger());
+                    } else {
+                        grown = CompletableFuture.allOf();
+                    }
+                    return grown;
+                }
+            );
+        } else {
+            res = CompletableFuture.allOf();
+        }
+        return res;
+    }
+
+    /**
+     * Whether the key existed before write, answered by the filter if it is
+     * ready and does not contain the key.
+     * @param key Key
+     * @return Completion with existence
+     */
+    private CompletableFuture<Boolean> existed(final Key key) {
+        final CuckooFilter filter = this.current.get();
+        final CompletableFuture<Boolean> res;
+        if (filter != null && !filter.mightContain(key.string())) {
+            res = CompletableFuture.completedFuture(false);
+        } else {
+            res = this.origin.exists(key);
+        }
+        return res;
+    }
+
+    /**
+     * Whether the key is definitely absent.
+     * @param key Key
+     * @return True if filter is ready and does not contain the key
+     */
+    private boolean absent(final Key key) {
+        final CuckooFilter filter = this.current.get();
+        final boolean res = filter != null && !filter.mightContain(key.string());
+        if (res) {
+            this.skipped.incrementAndGet();
+        }
+        return res;
+    }
+
+    /**
+     * Add saved key to the filter unless it existed before. Ready filter
+     * which overflowed is rebuilt in background.
+     * @param key Key
+     * @param existed Whether the key existed before the write
+     * @return Completion of dirty marker
+     */
+    private CompletableFuture<Void> added(final Key key, final boolean existed) {
+        CuckooFilter filter = this.building.get();
+        if (filter == null) {
+            filter = this.current.get();
+        }
+        if (filter != null && !existed) {
+            filter.add(key.string());
+            if (filter.overflowed() && this.current.get() == filter) {
+                Logger.warn(this, "Key filter overflowed, rebuilding it twice as large");
+                this.build(filter.larger()).whenComplete(
+                    (nothing, throwable) -> {
+                        if (throwable != null) {
+                            Logger.warn(
+                                this, "Failed to rebuild key filter: %[exception]s", throwable
+                            );
+                        }
+                    }
+                );
+            }
+        }
+        return this.changed();
+    }
+
+    /**
+     * Remove deleted key from the ready filter.
+     * @param key Key
+     * @return Completion of dirty marker
+     */
+    private CompletableFuture<Void> removed(final Key key) {
+        final CuckooFilter filter = this.current.get();
+        if (filter != null) {
+            filter.remove(key.string());
+        }
+        return this.changed();
+    }
+
+    /**
+     * Leave dirty marker of current generation on the first change after
+     * snapshot, so the snapshot is not used on next start. Generation is read
+     * after the filter is changed, so the change is either in the snapshot of
+     * this generation or marks it dirty.
+     * @return Completion
+     */
+    private CompletableFuture<Void> changed() {
+        final long gen = this.generation.get();
+        final CompletableFuture<Void> res;
+        if (this.marked.getAndSet(gen) == gen) {
+            res = CompletableFuture.allOf();
+        } else {
+            res = this.origin.save(KeyFilterStorage.dirty(gen), new Content.From(new byte[0]))
+                .handle(
+                    (nothing, throwable) -> {
+                        if (throwable != null) {
+                            this.marked.compareAndSet(gen, -1);
+                            Logger.warn(
+                                this, "Failed to mark key filter snapshot dirty: %[exception]s",
+                                throwable
+                            );
+                        }
+                        return nothing;
+                    }
+                );
+        }
+        return res;
+    }
+
+    /**
+     * Dirty marker key of snapshot generation.
+     * @param gen Generation
+     * @return Key
+     */
+    private static Key dirty(final long gen) {
+        return new Key.From(".keyfilter", String.format("dirty-%d", gen));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Key;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Per-key coordination of writes.
+ * <p>
+ * Every write gets a version when it starts. Its data is staged first without
+ * any coordination, then it is published under asynchronous per-key lock:
+ * writes to different keys never wait for each other, and publications to the
+ * same key are serialized. A write is published only if it is newer than the
+ * last published write of the key, so the write which started last always
+ * wins, regardless of how long its data was staged. Nothing blocks, lock
+ * waiters are chained futures. Per-key state is removed when there are no
+ * writes of the key in progress.
+ * </p>
+ * <p>
+ * Fills, e.g. cache fills with remote content, yield to writes: a fill runs
+ * under the same per-key lock, is skipped while a write of the key is in
+ * progress and never supersedes writes.
+ * </p>
+ * @since 0.8
+ */
+public final class KeyWrites {
+
+    /**
+     * Versions sequence.
+     */
+    private final AtomicLong versions;
+
+    /**
+     * Per-key states by key string.
+     */
+    private final ConcurrentMap<String, Slot> slots;
+
+    /**
+     * Publications which waited for the key lock.
+     */
+    private final AtomicLong contentions;
+
+    /**
+     * Writes skipped because newer write was published.
+     */
+    private final AtomicLong skipped;
+
+    /**
+     * Ctor.
+     */
+    public KeyWrites() {
+        this.versions = new AtomicLong();
+        this.slots = new ConcurrentHashMap<>();
+        this.contentions = new AtomicLong();
+        this.skipped = new AtomicLong();
+    }
+
+    /**
+     * Coordinated write.
+     * @param key Key
+     * @param stage Stage write data, e.g. save it to temporary key
+     * @param publish Publish staged data, second argument is false if newer
+     *  write was already published and staged data should be discarded
+     * @param <T> Staged data type
+     * @param <R> Result type
+     * @return Result of publication
+     */
+    public <T, R> CompletionStage<R> write(final Key key,
+        final Supplier<? extends CompletionStage<T>> stage,
+        final BiFunction<T, Boolean, ? extends CompletionStage<R>> publish) {
+        final String name = key.string();
+        final long version = this.versions.incrementAndGet();
+        final Slot slot = this.acquire(name, 1);
+        final CompletableFuture<R> res = CompletableFuture.completedFuture(key)
+            .thenCompose(ignored -> stage.get())
+            .thenCompose(
+                staged -> slot.locked(
+                    this.contentions,
+                    () -> {
+                        final boolean newer = version > slot.published;
+                        if (newer) {
+                            slot.published = version;
+                        } else {
+                            this.skipped.incrementAndGet();
+                        }
+                        return publish.apply(staged, newer);
+                    }
+                )
+            ).toCompletableFuture();
+        res.whenComplete((none, throwable) -> this.release(name, 1));
+        return res;
+    }
+
+    /**
+     * Fill yielding to coordinated writes of the key.
+     * @param key Key
+     * @param fill Fill, result is false if it was skipped
+     * @return False if fill was skipped because of a write in progress or by itself
+     */
+    public CompletionStage<Boolean> fill(final Key key,
+        final Supplier<? extends CompletionStage<Boolean>> fill) {
+        final String name = key.string();
+        final Slot slot = this.acquire(name, 0);
+        final CompletableFuture<Boolean> res = slot.locked(
+            this.contentions,
+            () -> {
+                final CompletionStage<Boolean> filled;
+                if (slot.versioned > 0) {
+                    filled = CompletableFuture.completedFuture(false);
+                } else {
+                    filled = fill.get();
+                }
+                return filled;
+            }
+        ).toCompletableFuture();
+        res.whenComplete((none, throwable) -> this.release(name, 0));
+        return res;
+    }
+
+    /**
+     * Publications which had to wait for another publication of the same key.
+     * @return Contention counter
+     */
+    public long contended() {
+        return this.contentions.get();
+    }
+
+    /**
+     * Writes discarded because newer write of the same key was published.
+     * @return Superseded writes counter
+     */
+    public long superseded() {
+        return this.skipped.get();
+    }
+
+    /**
+     * Keys with writes in progress.
+     * @return Number of keys
+     */
+    public int active() {
+        return this.slots.size();
+    }
+
+    /**
+     * Start write or fill creating key state if needed.
+     * @param name Key string
+     * @param versioned One for writes, zero for fills
+     * @return Key state
+     */
+    private Slot acquire(final String name, final int versioned) {
+        return this.slots.compute(
+            name,
+            (ignored, existing) -> {
+                final Slot res;
+                if (existing == null) {
+                    res = new Slot();
+                } else {
+                    res = existing;
+                }
+                res.writes += 1;
+                res.versioned += versioned;
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Finish write or fill removing idle key state.
+     * @param name Key string
+     * @param versioned One for writes, zero for fills
+     */
+    private void release(final String name, final int versioned) {
+        this.slots.computeIfPresent(
+            name,
+            (ignored, slot) -> {
+                slot.writes -= 1;
+                slot.versioned -= versioned;
+                final Slot res;
+                if (slot.writes == 0) {
+                    res = null;
+                } else {
+                    res = slot;
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Key state. Counters are modified by map compute operations only,
+     * published version is guarded by the key lock.
+     * @since 0.8
+     */
+    private static final class Slot {
+
+        /**
+         * Tail of the lock waiters chain.
+         */
+        private final AtomicReference<CompletableFuture<Void>> tail =
+            new AtomicReference<>(CompletableFuture.completedFuture(null));
+
+        /**
+         * Writes and fills in progress.
+         */
+        private int writes;
+
+        /**
+         * Writes in progress, read under the key lock.
+         */
+        private volatile int versioned;
+
+        /**
+         * Last published version.
+         */
+        private long published;
+
+        /**
+         * Run action under the key lock.
+         * @param contentions Contention counter
+         * @param action Action
+         * @param <R> Result type
+         * @return Result of action
+         */
+        <R> CompletionStage<R> locked(final AtomicLong contentions,
+            final Supplier<? extends CompletionStage<R>> action) {
+            final CompletableFuture<Void> mine = new CompletableFuture<>();
+            final CompletableFuture<Void> prev = this.tail.getAndSet(mine);
+            if (!prev.isDone()) {
+                contentions.incrementAndGet();
+            }
+            final CompletableFuture<R> res = prev.thenCompose(ignored -> action.get())
+                .toCompletableFuture();
+            res.whenComplete((none, throwable) -> mine.complete(null));
+            return res;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.Schedulers;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Storage decorator running operations of blocking storage off the caller
+ * thread, so blocking SDK calls do not stall the event loop.
+ * <p>
+ * Every operation is called on the executor and its result is bridged back
+ * to returned future. Content returned by {@link #value(Key)} is subscribed
+ * and requested on the executor too, so blocking reads are offloaded while
+ * backpressure of the content is preserved. By default virtual threads are
+ * used if the JVM supports them, otherwise a bounded thread pool which
+ * rejects operations when its queue is full: such operations fail with
+ * {@link RejectedExecutionException}, and so does the content if its
+ * subscription or request is rejected.
+ * </p>
+ * <p>
+ * Metrics: operations waiting in the queue, total time operations waited for
+ * a thread and total time spent in blocking calls, i.e. the time the caller
+ * thread would have been blocked without this decorator.
+ * </p>
+ * @since 0.8
+ */
+public final class OffloadStorage implements Storage {
+
+    /**
+     * Origin storage.
+     */
+    private final Storage origin;
+
+    /**
+     * Executor of blocking calls.
+     */
+    private final Executor exec;
+
+    /**
+     * Operations waiting for a thread.
+     */
+    private final AtomicInteger depth;
+
+    /**
+     * Total nanoseconds operations waited for a thread.
+     */
+    private final AtomicLong waits;
+
+    /**
+     * Total nanoseconds spent in blocking calls.
+     */
+    private final AtomicLong blocks;
+
+    /**
+     * Ctor with virtual threads or with bounded pool of twice as many
+     * threads as processors and queue of 1024 operations.
+     * @param origin Origin storage
+     */
+    public OffloadStorage(final Storage origin) {
+        this(origin, OffloadStorage.executor(2 * Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Ctor.
+     * @param origin Origin storage
+     * @param exec Executor of blocking calls
+     */
+    public OffloadStorage(final Storage origin, final Executor exec) {
+        this(origin, exec, new AtomicInteger(), new AtomicLong(), new AtomicLong());
+    }
+
+    /**
+     * Primary ctor.
+     * @param origin Origin storage
+     * @param exec Executor of blocking calls
+     * @param depth Operations waiting for a thread
+     * @param waits Total nanoseconds operations waited for a thread
+     * @param blocks Total nanoseconds spent in blocking calls
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    private OffloadStorage(final Storage origin, final Executor exec,
+        final AtomicInteger depth, final AtomicLong waits, final AtomicLong blocks) {
+        this.origin = origin;
+        this.exec = exec;
+        this.depth = depth;
+        this.waits = waits;
+        this.blocks = blocks;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> exists(final Key key) {
+        return this.offload(() -> this.origin.exists(key));
+    }
+
+    @Override
+    public CompletableFuture<Collection<Key>> list(final Key prefix) {
+        return this.offload(() -> this.origin.list(prefix));
+    }
+
+    @Override
+    public CompletableFuture<Void> save(final Key key, final Content content) {
+        return this.offload(() -> this.origin.save(key, content));
+    }
+
+    @Override
+    public CompletableFuture<Void> move(final Key source, final Key destination) {
+        return this.offload(() -> this.origin.move(source, destination));
+    }
+
+    @Override
+    public CompletableFuture<Long> size(final Key key) {
+        return this.offload(() -> this.origin.size(key));
+    }
+
+    @Override
+    public CompletableFuture<Content> value(final Key key) {
+        return this.offload(() -> this.origin.value(key)).thenApply(
+            content -> new Content.From(content.size(), this.offloaded(content))
+        );
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(final Key key) {
+        return this.offload(() -> this.origin.delete(key));
+    }
+
+    @Override
+    public <T> CompletionStage<T> exclusively(final Key key,
+        final Function<Storage, CompletionStage<T>> operation) {
+        return this.offload(
+            () -> this.origin.exclusively(
+                key,
+                storage -> operation.apply(
+                    new OffloadStorage(
+                        storage, this.exec, this.depth, this.waits, this.blocks
+                    )
+                )
+            )
+        );
+    }
+
+    /**
+     * Operations waiting for a thread.
+     * @return Queue depth gauge
+     */
+    public int queued() {
+        return this.depth.get();
+    }
+
+    /**
+     * Total time operations waited for a thread.
+     * @return Nanoseconds
+     */
+    public long waited() {
+        return this.waits.get();
+    }
+
+    /**
+     * Total time spent in blocking calls, which would block the caller
+     * thread without this decorator.
+     * @return Nanoseconds
+     */
+    public long blocked() {
+        return this.blocks.get();
+    }
+
+    /**
+     * Call operation on the executor.
+     * @param call Operation call
+     * @param <T> Result type
+     * @return Operation result
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private <T> CompletableFuture<T> offload(
+        final Supplier<? extends CompletionStage<T>> call) {
+        final CompletableFuture<CompletionStage<T>> res = new CompletableFuture<>();
+        final long submitted = System.nanoTime();
+        this.depth.incrementAndGet();
+        try {
+            this.exec.execute(
+                () -> {
+                    final long start = System.nanoTime();
+                    this.depth.decrementAndGet();
+                    this.waits.addAndGet(start - submitted);
+                    try {
+                        res.complete(call.get());
+                    } catch (final RuntimeException ex) {
+                        res.completeExceptionally(ex);
+                    } finally {
+                        this.blocks.addAndGet(System.nanoTime() - start);
+                    }
+                }
+            );
+        } catch (final RejectedExecutionException ex) {
+            this.depth.decrementAndGet();
+            res.completeExceptionally(ex);
+        }
+        return res.thenCompose(Function.identity());
+    }
+
+    /**
+     * Content subscribed and requested on the executor. Scheduler of the
+     * executor only reports rejected tasks to RxJava plugins, which would
+     * leave the content hanging, so rejection fails the content instead.
+     * @param content Origin content
+     * @return Offloaded content
+     */
+    private Flowable<ByteBuffer> offloaded(final Content content) {
+        return Flowable.defer(
+            () -> {
+                final PublishProcessor<ByteBuffer> rejected = PublishProcessor.create();
+                return Flowable.fromPublisher(content).subscribeOn(
+                    Schedulers.from(
+                        task -> {
+                            try {
+                                this.exec.execute(task);
+                            } catch (final RejectedExecutionException ex) {
+                                rejected.onError(ex);
+                            }
+                        }
+                    )
+                ).takeUntil(rejected);
+            }
+        );
+    }
+
+    /**
+     * Executor of virtual threads if JVM supports them, bounded pool otherwise.
+     * Virtual threads executor is created reflectively to keep compatibility
+     * with older JVMs.
+     * @param threads Threads count of bounded pool
+     * @return Executor
+     */
+    private static Executor executor(final int threads) {
+        Executor res;
+        try {
+            res = (Executor) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException ex) {
+            final AtomicInteger count = new AtomicInteger();
+            res = new ThreadPoolExecutor(
+                threads, threads, 1, TimeUnit.MINUTES, new ArrayBlockingQueue<>(1024),
+                runnable -> {
+                    final Thread thread = new Thread(
+                        runnable, String.format("offload-storage-%d", count.incrementAndGet())
+                    );
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            );
+        }
+        return res;
+    }
+}
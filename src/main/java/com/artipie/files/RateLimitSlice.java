@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithHeaders;
+import com.artipie.http.rs.RsWithStatus;
+import io.reactivex.Flowable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice limiting requests rate and response bandwidth of each client with
+ * {@link RateLimits}. Client is the user name of basic authorization,
+ * client address forwarded by trusted proxies if there is no authorization
+ * or `anonymous`.
+ * Put this slice behind authentication, so user names are verified. Requests
+ * over the limit are answered with `429` and `Retry-After` header, response
+ * body is paced: each buffer is delayed until client bandwidth allows to
+ * send it, nothing is buffered.
+ * @since 0.8
+ */
+public final class RateLimitSlice implements Slice {
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Limits.
+     */
+    private final RateLimits limits;
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param limits Limits
+     */
+    public RateLimitSlice(final Slice origin, final RateLimits limits) {
+        this.origin = origin;
+        this.limits = limits;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final Response res;
+        if (this.limits.enabled()) {
+            final String client = this.limits.client(headers);
+            final long wait = this.limits.request(client);
+            if (wait > 0) {
+                Flowable.fromPublisher(body).take(0).subscribe();
+                res = new RsWithHeaders(
+                    new RsWithStatus(RsStatus.TOO_MANY_REQUESTS),
+                    new Headers.From(
+                        "Retry-After",
+                        String.valueOf(TimeUnit.NANOSECONDS.toSeconds(wait) + 1)
+                    )
+                );
+            } else {
+                final Response rsp = this.origin.response(line, headers, body);
+                res = connection -> rsp.send(
+                    (status, rsheaders, rsbody) -> connection.accept(
+                        status, rsheaders, this.paced(client, rsbody)
+                    )
+                );
+            }
+        } else {
+            res = this.origin.response(line, headers, body);
+        }
+        return res;
+    }
+
+    /**
+     * Body paced by client bandwidth.
+     * @param client Client
+     * @param body Body
+     * @return Paced body
+     */
+    private Publisher<ByteBuffer> paced(final String client, final Publisher<ByteBuffer> body) {
+        return Flowable.fromPublisher(body).concatMap(
+            buf -> {
+                final long delay = this.limits.bytes(client, buf.remaining());
+                final Flowable<ByteBuffer> next;
+                if (delay > 0) {
+                    next = Flowable.timer(delay, TimeUnit.NANOSECONDS).map(tick -> buf);
+                } else {
+                    next = Flowable.just(buf);
+                }
+                return next;
+            }
+        );
+    }
+}
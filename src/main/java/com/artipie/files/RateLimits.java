@@ -0,0 +1,270 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-client limits of requests rate and bandwidth.
+ * <p>
+ * Every client, e.g. authenticated user or client address, gets its own pair
+ * of {@link TokenBucket}s for requests per second and bytes per second, so a
+ * single client can not take more than its fair share. Buckets are lock-free
+ * and kept in concurrent map. When there are too many clients idle buckets
+ * are removed, at most once a second, and if there are still too many, new
+ * clients share one pair of buckets, so the map is bounded. Client address is
+ * taken from `X-Forwarded-For` only if trusted proxies count is configured,
+ * otherwise anonymous clients share one pair of buckets. Non-positive rate
+ * disables the limit, burst must be at least one for enabled limit.
+ * </p>
+ * @since 0.8
+ */
+public final class RateLimits {
+
+    /**
+     * No limits.
+     */
+    public static final RateLimits UNLIMITED = new RateLimits(0, 0, 0, 0);
+
+    /**
+     * Clients count to start removing idle buckets.
+     */
+    private static final int MAX_CLIENTS = 10_000;
+
+    /**
+     * Min interval between idle buckets sweeps in nanoseconds.
+     */
+    private static final long SWEEP = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Requests per second.
+     */
+    private final double requests;
+
+    /**
+     * Requests burst.
+     */
+    private final long rburst;
+
+    /**
+     * Bytes per second.
+     */
+    private final double bytes;
+
+    /**
+     * Bytes burst.
+     */
+    private final long bburst;
+
+    /**
+     * Count of trusted proxies in front of the server.
+     */
+    private final int proxies;
+
+    /**
+     * Buckets by client.
+     */
+    private final ConcurrentMap<String, Buckets> clients;
+
+    /**
+     * Buckets shared by new clients when there are too many clients.
+     */
+    private final Buckets overflow;
+
+    /**
+     * Time of the last idle buckets sweep in nanoseconds.
+     */
+    private final AtomicLong swept;
+
+    /**
+     * Rejected requests.
+     */
+    private final AtomicLong rejections;
+
+    /**
+     * Ctor for server without trusted proxies.
+     * @param requests Requests per second
+     * @param rburst Requests burst
+     * @param bytes Bytes per second
+     * @param bburst Bytes burst
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public RateLimits(final double requests, final long rburst, final double bytes,
+        final long bburst) {
+        this(requests, rburst, bytes, bburst, 0);
+    }
+
+    /**
+     * Ctor.
+     * @param requests Requests per second
+     * @param rburst Requests burst
+     * @param bytes Bytes per second
+     * @param bburst Bytes burst
+     * @param proxies Count of trusted proxies in front of the server which
+     *  append client address to `X-Forwarded-For` header
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public RateLimits(final double requests, final long rburst, final double bytes,
+        final long bburst, final int proxies) {
+        this.requests = requests;
+        this.rburst = rburst;
+        this.bytes = bytes;
+        this.bburst = bburst;
+        this.proxies = proxies;
+        this.clients = new ConcurrentHashMap<>();
+        this.overflow = this.create();
+        this.swept = new AtomicLong(System.nanoTime() - RateLimits.SWEEP);
+        this.rejections = new AtomicLong();
+    }
+
+    /**
+     * Whether any limit is enabled.
+     * @return True if there are limits
+     */
+    public boolean enabled() {
+        return this.requests > 0 || this.bytes > 0;
+    }
+
+    /**
+     * Client of the request.
+     * @param headers Request headers
+     * @return Client id
+     */
+    public String client(final Iterable<Map.Entry<String, String>> headers) {
+        return new RqClient(headers, this.proxies).id();
+    }
+
+    /**
+     * Count of clients with own buckets.
+     * @return Clients count
+     */
+    public int clients() {
+        return this.clients.size();
+    }
+
+    /**
+     * Take request permit.
+     * @param client Client
+     * @return Zero if request is allowed, otherwise nanoseconds to retry after
+     */
+    public long request(final String client) {
+        final long res = this.buckets(client).requests.take(1);
+        if (res > 0) {
+            this.rejections.incrementAndGet();
+        }
+        return res;
+    }
+
+    /**
+     * Reserve bandwidth.
+     * @param client Client
+     * @param size Bytes count
+     * @return Nanoseconds to wait before sending the bytes
+     */
+    public long bytes(final String client, final long size) {
+        return this.buckets(client).bytes.reserve(size);
+    }
+
+    /**
+     * Requests rejected because of rate limit.
+     * @return Rejections counter
+     */
+    public long rejected() {
+        return this.rejections.get();
+    }
+
+    /**
+     * Buckets of the client.
+     * @param client Client
+     * @return Buckets
+     */
+    private Buckets buckets(final String client) {
+        Buckets res = this.clients.get(client);
+        if (res == null) {
+            if (this.clients.size() >= RateLimits.MAX_CLIENTS) {
+                final long now = System.nanoTime();
+                final long last = this.swept.get();
+                if (now - last >= RateLimits.SWEEP && this.swept.compareAndSet(last, now)) {
+                    this.clients.values().removeIf(Buckets::idle);
+                }
+            }
+            if (this.clients.size() >= RateLimits.MAX_CLIENTS) {
+                res = this.overflow;
+            } else {
+                res = this.clients.computeIfAbsent(client, ignored -> this.create());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Create new buckets.
+     * @return Buckets
+     */
+    private Buckets create() {
+        return new Buckets(
+            new TokenBucket(this.requests, this.rburst),
+            new TokenBucket(this.bytes, this.bburst)
+        );
+    }
+
+    /**
+     * Client buckets.
+     * @since 0.8
+     */
+    private static final class Buckets {
+
+        /**
+         * Requests bucket.
+         */
+        private final TokenBucket requests;
+
+        /**
+         * Bytes bucket.
+         */
+        private final TokenBucket bytes;
+
+        /**
+         * Ctor.
+         * @param requests Requests bucket
+         * @param bytes Bytes bucket
+         */
+        Buckets(final TokenBucket requests, final TokenBucket bytes) {
+            this.requests = requests;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Whether both buckets are idle.
+         * @return True if idle
+         */
+        boolean idle() {
+            return this.requests.idle() && this.bytes.idle();
+        }
+    }
+}
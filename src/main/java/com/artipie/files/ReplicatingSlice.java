@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Key;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rq.RqParams;
+import com.artipie.http.slice.KeyFromPath;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice enqueueing changed keys of {@link FilesSlice} to {@link Replication}
+ * after successful uploads, deletes and upload session commits. Response is
+ * sent as soon as origin responds, replication is done in background.
+ * @since 0.8
+ */
+public final class ReplicatingSlice implements Slice {
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Replication.
+     */
+    private final Replication replication;
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param replication Replication
+     */
+    public ReplicatingSlice(final Slice origin, final Replication replication) {
+        this.origin = origin;
+        this.replication = replication;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final RequestLineFrom rqline = new RequestLineFrom(line);
+        final URI uri = rqline.uri();
+        final boolean session = new RqParams(uri).value("upload").isPresent();
+        final RqMethod method = rqline.method();
+        final Response res;
+        if (
+            !session && (method == RqMethod.PUT || method == RqMethod.DELETE)
+                || session && method == RqMethod.POST
+        ) {
+            final Key key = new KeyFromPath(uri.getPath());
+            final Response rsp = this.origin.response(line, headers, body);
+            res = connection -> rsp.send(
+                (status, rsheaders, rsbody) -> {
+                    if (status.success()) {
+                        this.replication.changed(key);
+                    }
+                    return connection.accept(status, rsheaders, rsbody);
+                }
+            );
+        } else {
+            res = this.origin.response(line, headers, body);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,726 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ext.PublisherAs;
+import com.jcabi.log.Logger;
+import io.reactivex.Completable;
+import io.reactivex.disposables.Disposable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind replication of primary storage keys to secondary storage or
+ * another {@link Target}.
+ * <p>
+ * Changed keys are put into a queue persisted in primary storage under
+ * `.replication` key, so pending changes survive restarts, see
+ * {@link #recover()}. The queue is processed in background in batches,
+ * keys of a batch are split between parallel lanes by hash. Replication is
+ * state based: current primary content is copied to the target, or the key
+ * is removed from the target if primary does not have it.
+ * So changes of the same key can be replicated in any order and retried
+ * safely. Failed keys are retried with exponential backoff, keys which
+ * failed all attempts are counted as failures and retried with the longest
+ * backoff further. A key stays pending until its queue entries are deleted.
+ * Each write to the target is limited by a timeout, a timed out write counts
+ * as a failed attempt; it is abandoned rather than cancelled, since targets
+ * do not support cancellation. The key is replicated again when abandoned
+ * write completes, so its late content does not stay on the target.
+ * </p>
+ * @since 0.8
+ */
+public final class Replication {
+
+    /**
+     * Default root key of replication queue.
+     */
+    static final Key ROOT = new Key.From(".replication");
+
+    /**
+     * Primary storage.
+     */
+    private final Storage primary;
+
+    /**
+     * Replication target.
+     */
+    private final Target target;
+
+    /**
+     * Root key of replication queue.
+     */
+    private final Key root;
+
+    /**
+     * Max keys in a batch.
+     */
+    private final int batch;
+
+    /**
+     * Parallel lanes count.
+     */
+    private final int lanes;
+
+    /**
+     * Max attempts of each key.
+     */
+    private final int attempts;
+
+    /**
+     * Backoff before the first retry in milliseconds.
+     */
+    private final long backoff;
+
+    /**
+     * Timeout of each target write in milliseconds.
+     */
+    private final long timeout;
+
+    /**
+     * Queue of changes.
+     */
+    private final Queue<Change> queue;
+
+    /**
+     * Changes not replicated yet, including ones waiting for retry.
+     */
+    private final AtomicInteger waiting;
+
+    /**
+     * Changes not replicated yet by key.
+     */
+    private final ConcurrentMap<String, AtomicInteger> keys;
+
+    /**
+     * Whether a batch is being processed.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Replicated changes.
+     */
+    private final AtomicLong done;
+
+    /**
+     * Changes failed all attempts.
+     */
+    private final AtomicLong failures;
+
+    /**
+     * Recovery of persisted queue, null until started.
+     */
+    private final AtomicReference<CompletableFuture<Void>> recovery;
+
+    /**
+     * Times of changes by queue entries enqueued by this instance and not
+     * deleted yet, entries are ordered by time of change.
+     */
+    private final ConcurrentNavigableMap<String, Long> known;
+
+    /**
+     * Ctor with batches of 100 keys, 4 lanes and 5 attempts starting with
+     * 1 second backoff.
+     * @param primary Primary storage
+     * @param secondary Secondary storage
+     */
+    public Replication(final Storage primary, final Storage secondary) {
+        this(primary, secondary, 100, 4, 5, 1000);
+    }
+
+    /**
+     * Ctor.
+     * @param primary Primary storage
+     * @param secondary Secondary storage
+     * @param batch Max keys in a batch
+     * @param lanes Parallel lanes count
+     * @param attempts Max attempts of each key
+     * @param backoff Backoff before the first retry in milliseconds
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public Replication(final Storage primary, final Storage secondary, final int batch,
+        final int lanes, final int attempts, final long backoff) {
+        this(
+            primary, new StorageTarget(secondary), Replication.ROOT,
+            batch, lanes, attempts, backoff
+        );
+    }
+
+    /**
+     * Ctor.
+     * @param primary Primary storage
+     * @param target Replication target
+     * @param root Root key of replication queue in primary storage
+     * @param batch Max keys in a batch
+     * @param lanes Parallel lanes count
+     * @param attempts Max attempts of each key
+     * @param backoff Backoff before the first retry in milliseconds
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public Replication(final Storage primary, final Target target, final Key root,
+        final int batch, final int lanes, final int attempts, final long backoff) {
+        this(primary, target, root, batch, lanes, attempts, backoff, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    /**
+     * Ctor.
+     * @param primary Primary storage
+     * @param target Replication target
+     * @param root Root key of replication queue in primary storage
+     * @param batch Max keys in a batch
+     * @param lanes Parallel lanes count
+     * @param attempts Max attempts of each key
+     * @param backoff Backoff before the first retry in milliseconds
+     * @param timeout Timeout of each target write in milliseconds
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public Replication(final Storage primary, final Target target, final Key root,
+        final int batch, final int lanes, final int attempts, final long backoff,
+        final long timeout) {
+        this.primary = primary;
+        this.target = target;
+        this.root = root;
+        this.batch = batch;
+        this.lanes = lanes;
+        this.attempts = attempts;
+        this.backoff = backoff;
+        this.timeout = timeout;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.waiting = new AtomicInteger();
+        this.keys = new ConcurrentHashMap<>();
+        this.running = new AtomicBoolean();
+        this.done = new AtomicLong();
+        this.failures = new AtomicLong();
+        this.recovery = new AtomicReference<>();
+        this.known = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Enqueue changed key. Change is persisted and replicated asynchronously,
+     * the caller does not wait for it. Queue entries which can not be removed
+     * after replication are replicated again on recovery, which is harmless.
+     * @param key Changed key
+     */
+    public void changed(final Key key) {
+        this.count(key);
+        final long now = System.currentTimeMillis();
+        final Key entry = new Key.From(
+            this.root, String.format("%019d-%s", now, UUID.randomUUID())
+        );
+        this.known.put(entry.string(), now);
+        this.primary.save(
+            entry, new Content.From(key.string().getBytes(StandardCharsets.UTF_8))
+        ).whenComplete(
+            (nothing, throwable) -> {
+                if (throwable != null) {
+                    Logger.warn(
+                        this, "Failed to persist replication of %s: %[exception]s",
+                        key.string(), throwable
+                    );
+                }
+                this.enqueue(new Change(entry, key, now, 0));
+            }
+        );
+    }
+
+    /**
+     * Enqueue changes persisted before restart. Recovery runs once per
+     * instance, subsequent calls return the same completion, so callers can
+     * wait for pending keys to be restored. Failed recovery is started again
+     * by the next call. Entries enqueued by {@link #changed(Key)} of this
+     * instance are skipped, entries which can not be read, e.g. deleted
+     * concurrently, are ignored.
+     * @return Completion of recovery
+     */
+    public CompletionStage<Void> recover() {
+        final CompletableFuture<Void> started = new CompletableFuture<>();
+        final CompletableFuture<Void> res;
+        if (this.recovery.compareAndSet(null, started)) {
+            this.primary.list(this.root).thenCompose(
+                entries -> {
+                    final List<CompletableFuture<Change>> changes = entries.stream()
+                        .filter(entry -> !this.known.containsKey(entry.string()))
+                        .sorted((first, second) -> first.string().compareTo(second.string()))
+                        .map(this::restored)
+                        .collect(Collectors.toList());
+                    return CompletableFuture.allOf(
+                        changes.toArray(new CompletableFuture<?>[0])
+                    ).thenAccept(
+                        nothing -> changes.stream().map(CompletableFuture::join)
+                            .filter(Objects::nonNull)
+                            .filter(
+                                change -> this.known.putIfAbsent(
+                                    change.entry.string(), change.time
+                                ) == null
+                            )
+                            .forEach(
+                                change -> {
+                                    this.count(change.key);
+                                    this.enqueue(change);
+                                }
+                            )
+                    );
+                }
+            ).whenComplete(
+                (nothing, throwable) -> {
+                    if (throwable == null) {
+                        started.complete(null);
+                    } else {
+                        this.recovery.compareAndSet(started, null);
+                        started.completeExceptionally(throwable);
+                    }
+                }
+            );
+            res = started;
+        } else {
+            res = this.recovery.get();
+        }
+        return res;
+    }
+
+    /**
+     * Changes waiting for replication.
+     * @return Pending changes gauge
+     */
+    public int pending() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Whether the key has changes not replicated yet.
+     * @param key Key
+     * @return True if pending
+     */
+    public boolean pending(final Key key) {
+        return this.keys.containsKey(key.string());
+    }
+
+    /**
+     * Replication lag: age of the oldest change not replicated yet, including
+     * changes being replicated and waiting for retry.
+     * @return Lag in milliseconds, zero if there are no pending changes
+     */
+    public long lag() {
+        final Map.Entry<String, Long> oldest = this.known.firstEntry();
+        final long res;
+        if (oldest == null) {
+            res = 0;
+        } else {
+            res = Math.max(0, System.currentTimeMillis() - oldest.getValue());
+        }
+        return res;
+    }
+
+    /**
+     * Replicated changes.
+     * @return Replicated counter
+     */
+    public long replicated() {
+        return this.done.get();
+    }
+
+    /**
+     * Changes which failed all attempts.
+     * @return Failures counter
+     */
+    public long failed() {
+        return this.failures.get();
+    }
+
+    /**
+     * Read persisted queue entry.
+     * @param entry Queue entry key
+     * @return Change or null if entry can not be read
+     */
+    private CompletableFuture<Change> restored(final Key entry) {
+        return this.primary.value(entry)
+            .thenCompose(content -> new PublisherAs(content).asciiString())
+            .thenApply(key -> new Change(entry, new Key.From(key), this.time(entry), 0))
+            .handle((change, throwable) -> change)
+            .toCompletableFuture();
+    }
+
+    /**
+     * Count pending change of the key.
+     * @param key Key
+     */
+    private void count(final Key key) {
+        this.waiting.incrementAndGet();
+        this.keys.compute(
+            key.string(),
+            (ignored, left) -> {
+                final AtomicInteger res;
+                if (left == null) {
+                    res = new AtomicInteger();
+                } else {
+                    res = left;
+                }
+                res.incrementAndGet();
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Add counted change to the queue and start processing.
+     * @param change Change
+     */
+    private void enqueue(final Change change) {
+        this.queue.add(change);
+        this.drain();
+    }
+
+    /**
+     * Process next batch unless processing is in progress.
+     */
+    private void drain() {
+        if (this.running.compareAndSet(false, true)) {
+            final Map<String, List<Change>> keys = new LinkedHashMap<>();
+            Change next = this.queue.peek();
+            while (next != null && keys.size() < this.batch) {
+                this.queue.poll();
+                keys.computeIfAbsent(next.key.string(), ignored -> new ArrayList<>(1))
+                    .add(next);
+                next = this.queue.peek();
+            }
+            if (keys.isEmpty()) {
+                this.running.set(false);
+                if (!this.queue.isEmpty()) {
+                    this.drain();
+                }
+            } else {
+                this.process(keys.values()).whenComplete(
+                    (nothing, throwable) -> {
+                        this.running.set(false);
+                        this.drain();
+                    }
+                );
+            }
+        }
+    }
+
+    /**
+     * Process batch in parallel lanes.
+     * @param batch Changes grouped by key
+     * @return Completion of processing
+     */
+    private CompletableFuture<Void> process(final Collection<List<Change>> batch) {
+        final List<List<List<Change>>> split = new ArrayList<>(this.lanes);
+        for (int idx = 0; idx < this.lanes; idx += 1) {
+            split.add(new ArrayList<>(batch.size() / this.lanes + 1));
+        }
+        for (final List<Change> changes : batch) {
+            split.get(Math.floorMod(changes.get(0).key.string().hashCode(), this.lanes))
+                .add(changes);
+        }
+        return CompletableFuture.allOf(
+            split.stream().map(
+                lane -> {
+                    CompletableFuture<Void> res = CompletableFuture.allOf();
+                    for (final List<Change> changes : lane) {
+                        res = res.thenCompose(nothing -> this.replicate(changes));
+                    }
+                    return res;
+                }
+            ).toArray(CompletableFuture<?>[]::new)
+        );
+    }
+
+    /**
+     * Replicate current state of the key and remove its queue entries.
+     * @param changes Changes of the same key
+     * @return Completion, never exceptional
+     */
+    private CompletableFuture<Void> replicate(final List<Change> changes) {
+        final Key key = changes.get(0).key;
+        return this.primary.exists(key).thenCompose(
+            exists -> {
+                final CompletableFuture<Void> res;
+                if (exists) {
+                    res = this.primary.value(key)
+                        .thenCompose(content -> this.timed(key, this.target.save(key, content)));
+                } else {
+                    res = this.timed(key, this.target.remove(key));
+                }
+                return res;
+            }
+        ).thenCompose(
+            nothing -> CompletableFuture.allOf(
+                changes.stream().map(this::forget).toArray(CompletableFuture<?>[]::new)
+            )
+        ).handle(
+            (nothing, throwable) -> {
+                if (throwable == null) {
+                    this.done.addAndGet(changes.size());
+                    this.finished(key, changes.size());
+                } else {
+                    this.retry(changes, throwable);
+                }
+                return null;
+            }
+        );
+    }
+
+    /**
+     * Delete queue entry of replicated change.
+     * @param change Change
+     * @return Completion
+     */
+    private CompletableFuture<Void> forget(final Change change) {
+        return this.primary.exists(change.entry).thenCompose(
+            exists -> {
+                final CompletableFuture<Void> res;
+                if (exists) {
+                    res = this.primary.delete(change.entry);
+                } else {
+                    res = CompletableFuture.allOf();
+                }
+                return res;
+            }
+        ).thenRun(() -> this.known.remove(change.entry.string()));
+    }
+
+    /**
+     * Limit target write by the timeout. Timed out write is abandoned, if it
+     * succeeds later, it could overwrite newer content, so the key is changed
+     * again to replicate its current state after it.
+     * @param key Key
+     * @param write Target write
+     * @return Completion, exceptional on timeout
+     */
+    private CompletableFuture<Void> timed(final Key key, final CompletableFuture<Void> write) {
+        final CompletableFuture<Void> res = new CompletableFuture<>();
+        final Disposable timer = Completable.timer(this.timeout, TimeUnit.MILLISECONDS)
+            .subscribe(
+                () -> res.completeExceptionally(
+                    new TimeoutException(
+                        String.format(
+                            "Replication of %s timed out in %d ms", key.string(), this.timeout
+                        )
+                    )
+                )
+            );
+        write.whenComplete(
+            (nothing, throwable) -> {
+                timer.dispose();
+                if (throwable == null) {
+                    if (!res.complete(nothing)) {
+                        Logger.info(
+                            this, "Abandoned replication of %s completed, replicating again",
+                            key.string()
+                        );
+                        this.changed(key);
+                    }
+                } else {
+                    res.completeExceptionally(throwable);
+                }
+            }
+        );
+        return res;
+    }
+
+    /**
+     * Retry failed changes after backoff, count changes which failed all
+     * attempts as failures and keep retrying them with the longest backoff.
+     * @param changes Failed changes of the same key
+     * @param error Failure
+     */
+    private void retry(final List<Change> changes, final Throwable error) {
+        for (final Change change : changes) {
+            final int attempt = Math.min(change.attempt + 1, this.attempts);
+            if (attempt == this.attempts && change.attempt < this.attempts) {
+                this.failures.incrementAndGet();
+                Logger.warn(
+                    this, "Failed to replicate %s: %[exception]s", change.key.string(), error
+                );
+            }
+            Completable.timer(this.backoff << (attempt - 1), TimeUnit.MILLISECONDS)
+                .subscribe(
+                    () -> {
+                        this.queue.add(new Change(change.entry, change.key, change.time, attempt));
+                        this.drain();
+                    }
+                );
+        }
+    }
+
+    /**
+     * Remove finished changes from pending ones.
+     * @param key Key
+     * @param count Finished changes count
+     */
+    private void finished(final Key key, final int count) {
+        this.waiting.addAndGet(-count);
+        this.keys.computeIfPresent(
+            key.string(),
+            (ignored, left) -> {
+                final AtomicInteger res;
+                if (left.addAndGet(-count) <= 0) {
+                    res = null;
+                } else {
+                    res = left;
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Time of queue entry.
+     * @param entry Queue entry key
+     * @return Milliseconds
+     */
+    private long time(final Key entry) {
+        final String name = entry.string().substring(this.root.string().length() + 1);
+        return Long.parseLong(name.substring(0, name.indexOf('-')));
+    }
+
+    /**
+     * Replication target.
+     * @since 0.8
+     */
+    public interface Target {
+
+        /**
+         * Save content of the key.
+         * @param key Key
+         * @param content Content
+         * @return Completion
+         */
+        CompletableFuture<Void> save(Key key, Content content);
+
+        /**
+         * Remove the key.
+         * @param key Key
+         * @return Completion
+         */
+        CompletableFuture<Void> remove(Key key);
+    }
+
+    /**
+     * Secondary storage target.
+     * @since 0.8
+     */
+    public static final class StorageTarget implements Target {
+
+        /**
+         * Secondary storage.
+         */
+        private final Storage storage;
+
+        /**
+         * Ctor.
+         * @param storage Secondary storage
+         */
+        public StorageTarget(final Storage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public CompletableFuture<Void> save(final Key key, final Content content) {
+            return this.storage.save(key, content);
+        }
+
+        @Override
+        public CompletableFuture<Void> remove(final Key key) {
+            return this.storage.exists(key).thenCompose(
+                exists -> {
+                    final CompletableFuture<Void> res;
+                    if (exists) {
+                        res = this.storage.delete(key);
+                    } else {
+                        res = CompletableFuture.allOf();
+                    }
+                    return res;
+                }
+            );
+        }
+    }
+
+    /**
+     * Key change.
+     * @since 0.8
+     */
+    private static final class Change {
+
+        /**
+         * Queue entry key.
+         */
+        private final Key entry;
+
+        /**
+         * Changed key.
+         */
+        private final Key key;
+
+        /**
+         * Time of change in milliseconds.
+         */
+        private final long time;
+
+        /**
+         * Failed attempts.
+         */
+        private final int attempt;
+
+        /**
+         * Ctor.
+         * @param entry Queue entry key
+         * @param key Changed key
+         * @param time Time of change in milliseconds
+         * @param attempt Failed attempts
+         * @checkstyle ParameterNumberCheck (5 lines)
+         */
+        Change(final Key entry, final Key key, final long time, final int attempt) {
+            this.entry = entry;
+            this.key = key;
+            this.time = time;
+            this.attempt = attempt;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.headers.Authorization;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Client of the request: user name of basic authorization and forwarded
+ * client address. User name is not verified, so it can be trusted only
+ * behind authentication. `X-Forwarded-For` entries are appended by each
+ * proxy, client can forge only the leftmost ones, so client address is the
+ * entry appended by the farthest of trusted proxies in front of the server.
+ * @since 0.8
+ */
+final class RqClient {
+
+    /**
+     * Forwarded for header name.
+     */
+    private static final String FORWARDED = "X-Forwarded-For";
+
+    /**
+     * Request headers.
+     */
+    private final Iterable<Map.Entry<String, String>> headers;
+
+    /**
+     * Count of trusted proxies in front of the server.
+     */
+    private final int proxies;
+
+    /**
+     * Ctor for server without trusted proxies, forwarded address is not trusted.
+     * @param headers Request headers
+     */
+    RqClient(final Iterable<Map.Entry<String, String>> headers) {
+        this(headers, 0);
+    }
+
+    /**
+     * Ctor.
+     * @param headers Request headers
+     * @param proxies Count of trusted proxies in front of the server
+     */
+    RqClient(final Iterable<Map.Entry<String, String>> headers, final int proxies) {
+        this.headers = headers;
+        this.proxies = proxies;
+    }
+
+    /**
+     * User name of basic authorization.
+     * @return User name if present
+     */
+    Optional<String> user() {
+        return this.basic().map(Authorization.Basic::username);
+    }
+
+    /**
+     * User name of basic authorization verified by authentication.
+     * @param auth Authentication
+     * @return User name if present and its credentials are valid
+     */
+    Optional<String> user(final Authentication auth) {
+        return this.basic()
+            .filter(basic -> auth.user(basic.username(), basic.password()).isPresent())
+            .map(Authorization.Basic::username);
+    }
+
+    /**
+     * Client address from `X-Forwarded-For` header appended by trusted proxies.
+     * @return Address if present and there are trusted proxies
+     */
+    Optional<String> address() {
+        Optional<String> res = Optional.empty();
+        if (this.proxies > 0) {
+            final String[] entries = this.forwarded().orElse("").split(",");
+            if (entries.length >= this.proxies) {
+                res = Optional.of(entries[entries.length - this.proxies].trim())
+                    .filter(addr -> !addr.isEmpty());
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Whole `X-Forwarded-For` chain, not verified.
+     * @return Chain of all `X-Forwarded-For` headers if present
+     */
+    Optional<String> forwarded() {
+        final StringBuilder res = new StringBuilder();
+        for (final Map.Entry<String, String> header : this.headers) {
+            if (RqClient.FORWARDED.equalsIgnoreCase(header.getKey())) {
+                if (res.length() > 0) {
+                    res.append(',');
+                }
+                res.append(header.getValue());
+            }
+        }
+        return Optional.of(res.toString()).filter(chain -> !chain.isEmpty());
+    }
+
+    /**
+     * Client id: user name, trusted address if there is no user or `anonymous`.
+     * @return Client id
+     */
+    String id() {
+        return this.user().map(name -> String.format("user:%s", name)).orElseGet(
+            () -> this.address().map(addr -> String.format("addr:%s", addr))
+                .orElse("anonymous")
+        );
+    }
+
+    /**
+     * Basic authorization header.
+     * @return Basic authorization if present
+     */
+    private Optional<Authorization.Basic> basic() {
+        return this.header(Authorization.NAME)
+            .map(Authorization::new)
+            .filter(auth -> "basic".equals(auth.scheme().toLowerCase(Locale.US)))
+            .map(auth -> new Authorization.Basic(auth.credentials()));
+    }
+
+    /**
+     * First value of request header.
+     * @param name Header name
+     * @return Header value if present
+     */
+    private Optional<String> header(final String name) {
+        Optional<String> res = Optional.empty();
+        for (final Map.Entry<String, String> header : this.headers) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                res = Optional.of(header.getValue());
+                break;
+            }
+        }
+        return res;
+    }
+}
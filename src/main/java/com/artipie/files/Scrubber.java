@@ -0,0 +1,553 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ext.Digests;
+import com.artipie.asto.ext.PublisherAs;
+import com.jcabi.log.Logger;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Background integrity scrubber of storage content.
+ * <p>
+ * Walks all keys of the storage except internal ones, starting with dot,
+ * and verifies their content against digest and size recorded by
+ * {@link DigestStorage}. Bad keys are moved to `.quarantine` or evicted,
+ * proxy cache then fetches them from remote again. Orphan keys, which write
+ * was marked pending longer than grace period ago, can be truncated by an
+ * aborted write, so they are handled as bad keys. Keys with pending write
+ * marker younger than grace period are being written and are skipped. Keys
+ * without records and markers, e.g. written before {@link DigestStorage}
+ * was used, are adopted: their checksum is recorded, so they are verified
+ * on next passes.
+ * Key which checksum record changed or which write started while it was
+ * verified is skipped, it was written concurrently.
+ * </p>
+ * <p>
+ * Keys are verified in parallel windows, in the order of key names. After
+ * each window the last verified key is saved as checkpoint, so interrupted
+ * pass resumes from it after restart. Content reads are paced by a token
+ * bucket to stay within the I/O budget.
+ * </p>
+ * @since 0.8
+ */
+public final class Scrubber {
+
+    /**
+     * Checkpoint key.
+     */
+    static final Key CHECKPOINT = new Key.From(".scrub", "checkpoint");
+
+    /**
+     * Quarantine root key.
+     */
+    static final Key QUARANTINE = new Key.From(".quarantine");
+
+    /**
+     * Storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Checksum records.
+     */
+    private final Checksums checksums;
+
+    /**
+     * Action for bad keys.
+     */
+    private final Action action;
+
+    /**
+     * I/O budget.
+     */
+    private final TokenBucket budget;
+
+    /**
+     * Keys verified in parallel.
+     */
+    private final int parallelism;
+
+    /**
+     * Grace period of pending writes in milliseconds.
+     */
+    private final long grace;
+
+    /**
+     * Whether scrubbing in background is running.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Verified keys.
+     */
+    private final AtomicLong good;
+
+    /**
+     * Bad keys.
+     */
+    private final AtomicLong bad;
+
+    /**
+     * Orphan keys.
+     */
+    private final AtomicLong orphans;
+
+    /**
+     * Adopted keys.
+     */
+    private final AtomicLong adoptions;
+
+    /**
+     * Bytes read.
+     */
+    private final AtomicLong bytes;
+
+    /**
+     * Ctor with 1 hour grace period of pending writes.
+     * @param storage Storage
+     * @param action Action for bad keys
+     * @param budget I/O budget in bytes per second, non-positive for no limit
+     * @param parallelism Keys verified in parallel
+     */
+    public Scrubber(final Storage storage, final Action action, final long budget,
+        final int parallelism) {
+        this(storage, action, budget, parallelism, Duration.ofHours(1));
+    }
+
+    /**
+     * Ctor.
+     * @param storage Storage
+     * @param action Action for bad keys
+     * @param budget I/O budget in bytes per second, non-positive for no limit
+     * @param parallelism Keys verified in parallel
+     * @param grace Grace period of pending writes
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public Scrubber(final Storage storage, final Action action, final long budget,
+        final int parallelism, final Duration grace) {
+        this.storage = storage;
+        this.checksums = new Checksums(storage);
+        this.action = action;
+        this.budget = new TokenBucket(budget, Math.max(budget, 1));
+        this.parallelism = parallelism;
+        this.grace = grace.toMillis();
+        this.running = new AtomicBoolean();
+        this.good = new AtomicLong();
+        this.bad = new AtomicLong();
+        this.orphans = new AtomicLong();
+        this.adoptions = new AtomicLong();
+        this.bytes = new AtomicLong();
+    }
+
+    /**
+     * Scrub storage in background: run passes one after another with pause
+     * between them until stopped.
+     * @param pause Pause between passes
+     */
+    public void start(final Duration pause) {
+        if (this.running.compareAndSet(false, true)) {
+            this.loop(pause);
+        }
+    }
+
+    /**
+     * Stop background scrubbing after current pass.
+     */
+    public void stop() {
+        this.running.set(false);
+    }
+
+    /**
+     * Run one pass over storage, resuming from checkpoint if any.
+     * @return Completion of the pass
+     */
+    public CompletionStage<Void> scrub() {
+        return this.storage.list(Key.ROOT).thenCombine(
+            this.checkpoint(),
+            (keys, checkpoint) -> keys.stream()
+                .filter(key -> !key.string().startsWith("."))
+                .filter(
+                    key -> !checkpoint.isPresent()
+                        || key.string().compareTo(checkpoint.get()) > 0
+                )
+                .sorted((first, second) -> first.string().compareTo(second.string()))
+                .collect(Collectors.toList())
+        ).thenCompose(
+            keys -> {
+                CompletableFuture<Void> res = CompletableFuture.allOf();
+                for (int from = 0; from < keys.size(); from += this.parallelism) {
+                    final List<Key> window =
+                        keys.subList(from, Math.min(keys.size(), from + this.parallelism));
+                    res = res.thenCompose(
+                        nothing -> CompletableFuture.allOf(
+                            window.stream().map(this::verify)
+                                .toArray(CompletableFuture<?>[]::new)
+                        )
+                    ).thenCompose(
+                        nothing -> this.storage.save(
+                            Scrubber.CHECKPOINT,
+                            new Content.From(
+                                window.get(window.size() - 1).string()
+                                    .getBytes(StandardCharsets.UTF_8)
+                            )
+                        )
+                    );
+                }
+                return res;
+            }
+        ).thenCompose(
+            nothing -> this.storage.exists(Scrubber.CHECKPOINT).thenCompose(
+                exists -> {
+                    final CompletableFuture<Void> res;
+                    if (exists) {
+                        res = this.storage.delete(Scrubber.CHECKPOINT);
+                    } else {
+                        res = CompletableFuture.allOf();
+                    }
+                    return res;
+                }
+            )
+        );
+    }
+
+    /**
+     * Keys verified successfully.
+     * @return Verified counter
+     */
+    public long verified() {
+        return this.good.get();
+    }
+
+    /**
+     * Keys found corrupted and quarantined or evicted.
+     * @return Corrupted counter
+     */
+    public long corrupted() {
+        return this.bad.get();
+    }
+
+    /**
+     * Keys of aborted writes, which were quarantined or evicted.
+     * @return Orphans counter
+     */
+    public long orphaned() {
+        return this.orphans.get();
+    }
+
+    /**
+     * Keys without checksum records which were recorded.
+     * @return Adopted counter
+     */
+    public long adopted() {
+        return this.adoptions.get();
+    }
+
+    /**
+     * Bytes read from storage.
+     * @return Bytes counter
+     */
+    public long read() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Run passes until stopped.
+     * @param pause Pause between passes
+     */
+    private void loop(final Duration pause) {
+        this.scrub().whenComplete(
+            (nothing, throwable) -> {
+                if (throwable != null) {
+                    Logger.warn(this, "Scrubbing failed: %[exception]s", throwable);
+                }
+                if (this.running.get()) {
+                    Completable.timer(pause.toMillis(), TimeUnit.MILLISECONDS)
+                        .subscribe(() -> this.loop(pause));
+                }
+            }
+        );
+    }
+
+    /**
+     * Checkpoint of interrupted pass.
+     * @return Last verified key if any
+     */
+    private CompletableFuture<Optional<String>> checkpoint() {
+        return this.storage.exists(Scrubber.CHECKPOINT).thenCompose(
+            exists -> {
+                final CompletableFuture<Optional<String>> res;
+                if (exists) {
+                    res = this.storage.value(Scrubber.CHECKPOINT)
+                        .thenCompose(
+                            content -> new PublisherAs(content).string(StandardCharsets.UTF_8)
+                        )
+                        .thenApply(Optional::of);
+                } else {
+                    res = CompletableFuture.completedFuture(Optional.empty());
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Verify key.
+     * @param key Key
+     * @return Completion, never exceptional
+     */
+    private CompletableFuture<Void> verify(final Key key) {
+        return this.checksums.started(key).thenCompose(
+            started -> {
+                final CompletionStage<Void> res;
+                if (started.isPresent()) {
+                    if (System.currentTimeMillis() - started.get() > this.grace) {
+                        res = this.orphan(key);
+                    } else {
+                        res = CompletableFuture.allOf();
+                    }
+                } else {
+                    res = this.checksums.load(key).thenCompose(
+                        recorded -> {
+                            final CompletionStage<Void> checked;
+                            if (recorded.isPresent()) {
+                                checked = this.check(key, recorded.get());
+                            } else {
+                                checked = this.adopt(key);
+                            }
+                            return checked;
+                        }
+                    );
+                }
+                return res;
+            }
+        ).handle(
+            (nothing, throwable) -> {
+                if (throwable != null) {
+                    Logger.warn(
+                        this, "Failed to verify %s: %[exception]s", key.string(), throwable
+                    );
+                }
+                return (Void) null;
+            }
+        ).toCompletableFuture();
+    }
+
+    /**
+     * Check content of the key against recorded checksum.
+     * @param key Key
+     * @param recorded Recorded checksum line
+     * @return Completion
+     */
+    private CompletionStage<Void> check(final Key key, final String recorded) {
+        return this.storage.value(key).thenCompose(this::checksum).thenCompose(
+            actual -> {
+                final CompletionStage<Void> res;
+                if (recorded.equals(actual.line())) {
+                    this.good.incrementAndGet();
+                    res = CompletableFuture.allOf();
+                } else {
+                    res = this.checksums.load(key).thenCombine(
+                        this.checksums.started(key),
+                        (again, started) -> again.equals(Optional.of(recorded))
+                            && !started.isPresent()
+                    ).thenCompose(
+                        same -> {
+                            final CompletionStage<Void> bad;
+                            if (same) {
+                                bad = this.corrupted(key);
+                            } else {
+                                bad = CompletableFuture.allOf();
+                            }
+                            return bad;
+                        }
+                    );
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Record checksum of the key without record, unless its write started or
+     * its record appeared while it was read.
+     * @param key Key
+     * @return Completion
+     */
+    private CompletionStage<Void> adopt(final Key key) {
+        return this.storage.value(key).thenCompose(this::checksum).thenCompose(
+            actual -> this.checksums.load(key).thenCombine(
+                this.checksums.started(key),
+                (recorded, started) -> !recorded.isPresent() && !started.isPresent()
+            ).thenCompose(
+                unknown -> {
+                    final CompletionStage<Void> res;
+                    if (unknown) {
+                        this.adoptions.incrementAndGet();
+                        res = this.checksums.save(key, actual.digest, actual.size);
+                    } else {
+                        res = CompletableFuture.allOf();
+                    }
+                    return res;
+                }
+            )
+        );
+    }
+
+    /**
+     * Handle orphan key of aborted write as bad one.
+     * @param key Key
+     * @return Completion
+     */
+    private CompletionStage<Void> orphan(final Key key) {
+        this.orphans.incrementAndGet();
+        Logger.warn(this, "Aborted write of %s, %s", key.string(), this.action);
+        return this.handle(key);
+    }
+
+    /**
+     * Handle corrupted key.
+     * @param key Key
+     * @return Completion
+     */
+    private CompletionStage<Void> corrupted(final Key key) {
+        this.bad.incrementAndGet();
+        Logger.warn(this, "Corrupted content of %s, %s", key.string(), this.action);
+        return this.handle(key);
+    }
+
+    /**
+     * Quarantine or evict bad key according to the action.
+     * @param key Key
+     * @return Completion
+     */
+    private CompletionStage<Void> handle(final Key key) {
+        final CompletableFuture<Void> res;
+        if (this.action == Action.QUARANTINE) {
+            res = this.storage.move(key, new Key.From(Scrubber.QUARANTINE, key.string()));
+        } else {
+            res = this.storage.delete(key);
+        }
+        return res.thenCompose(nothing -> this.checksums.delete(key));
+    }
+
+    /**
+     * Compute checksum of content reading it within I/O budget.
+     * @param content Content
+     * @return Checksum
+     */
+    private CompletionStage<Checksum> checksum(final Content content) {
+        final MessageDigest digest = Digests.SHA256.get();
+        final AtomicLong size = new AtomicLong();
+        final CompletableFuture<Checksum> res = new CompletableFuture<>();
+        Flowable.fromPublisher(content).concatMap(
+            buf -> {
+                final long delay = this.budget.reserve(buf.remaining());
+                final Flowable<ByteBuffer> next;
+                if (delay > 0) {
+                    next = Flowable.timer(delay, TimeUnit.NANOSECONDS).map(tick -> buf);
+                } else {
+                    next = Flowable.just(buf);
+                }
+                return next;
+            }
+        ).subscribe(
+            buf -> {
+                size.addAndGet(buf.remaining());
+                this.bytes.addAndGet(buf.remaining());
+                digest.update(buf);
+            },
+            res::completeExceptionally,
+            () -> res.complete(new Checksum(digest.digest(), size.get()))
+        );
+        return res;
+    }
+
+    /**
+     * Action for bad keys.
+     * @since 0.8
+     */
+    public enum Action {
+        /**
+         * Move bad key to `.quarantine`.
+         */
+        QUARANTINE,
+
+        /**
+         * Delete bad key.
+         */
+        EVICT
+    }
+
+    /**
+     * Computed checksum.
+     * @since 0.8
+     */
+    private static final class Checksum {
+
+        /**
+         * SHA-256 digest.
+         */
+        private final byte[] digest;
+
+        /**
+         * Content size.
+         */
+        private final long size;
+
+        /**
+         * Ctor.
+         * @param digest SHA-256 digest
+         * @param size Content size
+         */
+        Checksum(final byte[] digest, final long size) {
+            this.digest = digest;
+            this.size = size;
+        }
+
+        /**
+         * Checksum line as recorded.
+         * @return Line
+         */
+        String line() {
+            return Checksums.line(this.digest, this.size);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+/**
+ * Timed phase of request processing. Span is started when created and
+ * finished by {@link #end()}, it can be tagged from any thread.
+ * @since 0.8
+ */
+public interface Span {
+
+    /**
+     * Span doing nothing.
+     */
+    Span NOP = new Nop();
+
+    /**
+     * Start child span.
+     * @param name Span name
+     * @return Child span
+     */
+    Span child(String name);
+
+    /**
+     * Add tag to the span.
+     * @param name Tag name
+     * @param value Tag value
+     * @return This span
+     */
+    Span tag(String name, Object value);
+
+    /**
+     * Finish span, only the first call has effect.
+     */
+    void end();
+
+    /**
+     * Span doing nothing.
+     * @since 0.8
+     */
+    final class Nop implements Span {
+
+        @Override
+        public Span child(final String name) {
+            return this;
+        }
+
+        @Override
+        public Span tag(final String name, final Object value) {
+            return this;
+        }
+
+        @Override
+        public void end() {
+            // nothing to record
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.cache.Cache;
+import com.artipie.asto.cache.CacheControl;
+import com.artipie.asto.cache.FromRemoteCache;
+import com.artipie.asto.cache.Remote;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Stale-while-revalidate cache of {@link FileProxySlice}.
+ * <p>
+ * Cached content is served without remote request while it is fresh. When
+ * freshness window is over, content is still served from cache during
+ * stale-while-revalidate window, and it is refreshed from remote in background,
+ * at most one refresh per key at a time. Older content is loaded from remote,
+ * and it is served from cache on remote error only within stale-if-error
+ * window after freshness window.
+ * </p>
+ * <p>
+ * Fetch times are kept in memory, cached content of unknown age, e.g. after
+ * restart, is considered stale. Fetch times older than freshness window plus
+ * the longer of stale windows are swept once per that period, so memory
+ * holds only keys fetched recently, content of swept keys is of unknown age.
+ * </p>
+ * @since 0.8
+ */
+public final class StaleWhileRevalidate implements Cache, CacheControl {
+
+    /**
+     * Cache storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Freshness window.
+     */
+    private final Duration fresh;
+
+    /**
+     * Stale-while-revalidate window.
+     */
+    private final Duration stale;
+
+    /**
+     * Stale-if-error window.
+     */
+    private final Duration error;
+
+    /**
+     * Fetch times of keys in nanoseconds by key string.
+     */
+    private final ConcurrentMap<String, Long> fetched;
+
+    /**
+     * Refreshes in progress by key string.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Void>> refreshing;
+
+    /**
+     * Time of the last fetch times sweep in nanoseconds.
+     */
+    private final AtomicLong swept;
+
+    /**
+     * Ctor.
+     * @param storage Cache storage
+     * @param fresh Freshness window
+     * @param stale Stale-while-revalidate window after freshness window
+     * @param error Stale-if-error window after freshness window
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public StaleWhileRevalidate(final Storage storage, final Duration fresh,
+        final Duration stale, final Duration error) {
+        this.storage = storage;
+        this.fresh = fresh;
+        this.stale = stale;
+        this.error = error;
+        this.fetched = new ConcurrentHashMap<>();
+        this.refreshing = new ConcurrentHashMap<>();
+        this.swept = new AtomicLong(System.nanoTime());
+    }
+
+    @Override
+    public CompletionStage<Optional<? extends Content>> load(
+        final Key key, final Remote remote, final CacheControl control
+    ) {
+        return new FromRemoteCache(this.storage).load(key, remote, this);
+    }
+
+    @Override
+    public CompletionStage<Boolean> validate(final Key key, final Remote remote) {
+        return CompletableFuture.completedFuture(
+            this.age(key) <= this.fresh.plus(this.error).toNanos()
+        );
+    }
+
+    /**
+     * Cached content which can be served without waiting for remote.
+     * @param key Key
+     * @param refresh Refresh of the key from remote, started in background
+     *  when content is stale
+     * @return Cached content if it is fresh or stale within revalidate window
+     */
+    public CompletionStage<Optional<? extends Content>> cached(
+        final Key key, final Supplier<? extends CompletionStage<?>> refresh
+    ) {
+        final long age = this.age(key);
+        final CompletionStage<Optional<? extends Content>> res;
+        if (age <= this.fresh.plus(this.stale).toNanos()) {
+            res = this.storage.exists(key).thenCompose(
+                exists -> {
+                    final CompletionStage<Optional<? extends Content>> content;
+                    if (exists) {
+                        content = this.storage.value(key).thenApply(
+                            value -> {
+                                if (age > this.fresh.toNanos()) {
+                                    this.refresh(key, refresh);
+                                }
+                                return Optional.of(value);
+                            }
+                        );
+                    } else {
+                        content = CompletableFuture.completedFuture(Optional.empty());
+                    }
+                    return content;
+                }
+            );
+        } else {
+            res = CompletableFuture.completedFuture(Optional.empty());
+        }
+        return res;
+    }
+
+    /**
+     * Record that key was fetched from remote just now.
+     * @param key Key
+     */
+    public void fetched(final Key key) {
+        final long now = System.nanoTime();
+        this.fetched.put(key.string(), now);
+        final long horizon = this.horizon();
+        final long last = this.swept.get();
+        if (now - last > horizon && this.swept.compareAndSet(last, now)) {
+            this.fetched.values().removeIf(time -> now - time > horizon);
+        }
+    }
+
+    /**
+     * Count of keys with known fetch time.
+     * @return Count
+     */
+    public int tracked() {
+        return this.fetched.size();
+    }
+
+    /**
+     * Start refresh unless one is in progress for the key.
+     * @param key Key
+     * @param refresh Refresh
+     */
+    private void refresh(final Key key, final Supplier<? extends CompletionStage<?>> refresh) {
+        final CompletableFuture<Void> mark = new CompletableFuture<>();
+        if (this.refreshing.putIfAbsent(key.string(), mark) == null) {
+            CompletableFuture.completedFuture(key)
+                .thenCompose(ignored -> refresh.get().thenApply(any -> key))
+                .whenComplete(
+                    (nothing, throwable) -> {
+                        this.refreshing.remove(key.string(), mark);
+                        mark.complete(null);
+                    }
+                );
+        }
+    }
+
+    /**
+     * Age after which fetch time is not needed: content is not served without
+     * remote after freshness window and the longer of stale windows.
+     * @return Age in nanoseconds
+     */
+    private long horizon() {
+        final Duration longest;
+        if (this.stale.compareTo(this.error) > 0) {
+            longest = this.stale;
+        } else {
+            longest = this.error;
+        }
+        return this.fresh.plus(longest).toNanos();
+    }
+
+    /**
+     * Age of cached key.
+     * @param key Key
+     * @return Age in nanoseconds, content of unknown age is just past freshness
+     */
+    private long age(final Key key) {
+        final Long time = this.fetched.get(key.string());
+        final long res;
+        if (time == null) {
+            res = this.fresh.toNanos() + 1;
+        } else {
+            res = System.nanoTime() - time;
+        }
+        return res;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * Implemented as generic cell rate algorithm: the only state is theoretical
+ * time when all taken tokens are paid off, updated with compare-and-set.
+ * Tokens are refilled at the rate, up to burst tokens can be taken at once.
+ * Bucket with non-positive rate is unlimited.
+ * </p>
+ * @since 0.8
+ */
+public final class TokenBucket {
+
+    /**
+     * Nanoseconds to refill one token.
+     */
+    private final double interval;
+
+    /**
+     * Burst tolerance in nanoseconds.
+     */
+    private final long tolerance;
+
+    /**
+     * Theoretical time of paying off taken tokens in nanoseconds.
+     */
+    private final AtomicLong paid;
+
+    /**
+     * Ctor.
+     * @param rate Tokens per second
+     * @param burst Max tokens taken at once, at least one if rate is positive
+     */
+    public TokenBucket(final double rate, final long burst) {
+        if (rate > 0 && burst < 1) {
+            throw new IllegalArgumentException(
+                String.format("Burst must be at least 1 token, got %d", burst)
+            );
+        }
+        if (rate > 0) {
+            this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        } else {
+            this.interval = 0;
+        }
+        this.tolerance = (long) (this.interval * burst);
+        this.paid = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take tokens if they are available.
+     * @param tokens Tokens count
+     * @return Zero if tokens were taken, otherwise nanoseconds to wait for them
+     */
+    public long take(final long tokens) {
+        long res = 0;
+        if (this.interval > 0) {
+            while (true) {
+                final long now = System.nanoTime();
+                final long prev = this.paid.get();
+                final long next = Math.max(prev, now) + (long) (tokens * this.interval);
+                if (next - now > this.tolerance) {
+                    res = next - now - this.tolerance;
+                    break;
+                }
+                if (this.paid.compareAndSet(prev, next)) {
+                    break;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Take tokens in advance even if they are not available yet.
+     * @param tokens Tokens count
+     * @return Nanoseconds to wait before using the tokens
+     */
+    public long reserve(final long tokens) {
+        long res = 0;
+        if (this.interval > 0) {
+            while (true) {
+                final long now = System.nanoTime();
+                final long prev = this.paid.get();
+                final long next = Math.max(prev, now) + (long) (tokens * this.interval);
+                if (this.paid.compareAndSet(prev, next)) {
+                    res = Math.max(0, next - now - this.tolerance);
+                    break;
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Whether bucket is full, i.e. it is in initial state.
+     * @return True if no tokens are owed
+     */
+    public boolean idle() {
+        return this.paid.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.rq.RequestLineFrom;
+import io.reactivex.Flowable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.reactivestreams.Publisher;
+
+/**
+ * Slice tracing requests with a span tagged with request method and key,
+ * response status and response body bytes. The span ends when the response
+ * is sent.
+ * @since 0.8
+ */
+public final class TracingSlice implements Slice {
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Tracer.
+     */
+    private final Tracer tracer;
+
+    /**
+     * Span name.
+     */
+    private final String name;
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     * @param tracer Tracer
+     * @param name Span name
+     */
+    public TracingSlice(final Slice origin, final Tracer tracer, final String name) {
+        this.origin = origin;
+        this.tracer = tracer;
+        this.name = name;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final Response res;
+        if (this.tracer == Tracer.NOP) {
+            res = this.origin.response(line, headers, body);
+        } else {
+            res = connection -> {
+                final RequestLineFrom rqline = new RequestLineFrom(line);
+                final Span span = this.tracer.span(this.name)
+                    .tag("method", rqline.method().value())
+                    .tag("key", rqline.uri().getPath());
+                final AtomicLong bytes = new AtomicLong();
+                return this.origin.response(line, headers, body).send(
+                    (status, rsheaders, rsbody) -> {
+                        span.tag("status", status.code());
+                        return connection.accept(
+                            status, rsheaders,
+                            Flowable.fromPublisher(rsbody)
+                                .doOnNext(buf -> bytes.addAndGet(buf.remaining()))
+                        );
+                    }
+                ).whenComplete(
+                    (nothing, throwable) -> {
+                        if (throwable != null) {
+                            span.tag("error", throwable.getClass().getSimpleName());
+                        }
+                        span.tag("bytes", bytes.get()).end();
+                    }
+                );
+            };
+        }
+        return res;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ext.KeyLastPart;
+import com.artipie.asto.ext.PublisherAs;
+import com.jcabi.log.Logger;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.reactivestreams.Publisher;
+
+/**
+ * Resumable upload sessions staged in storage.
+ * <p>
+ * Upload session is started for a target key, then parts of the content are
+ * saved at their offsets in any order, they may overlap. On commit, parts are
+ * verified to cover the content without gaps, concatenated into a temporary
+ * key skipping overlapped bytes and moved to the target key, so the target
+ * never contains partial content. Sessions are kept under `.uploads` key,
+ * stale ones are removed by {@link #clean(Duration)}, periodically after
+ * {@link #start(Duration, Duration)}.
+ * Commits are coordinated with other writes of the target key by
+ * {@link KeyWrites}, commit superseded by a newer write discards its content.
+ * </p>
+ * @since 0.8
+ */
+public final class Uploads {
+
+    /**
+     * Root key of upload sessions.
+     */
+    private static final Key ROOT = new Key.From(".uploads");
+
+    /**
+     * Session id pattern.
+     */
+    private static final Pattern ID = Pattern.compile("[0-9a-f\\-]{36}");
+
+    /**
+     * Storage.
+     */
+    private final Storage storage;
+
+    /**
+     * Writes coordination of target keys.
+     */
+    private final KeyWrites writes;
+
+    /**
+     * Whether cleaning in background is running.
+     */
+    private final AtomicBoolean running;
+
+    /**
+     * Ctor.
+     * @param storage Storage
+     */
+    public Uploads(final Storage storage) {
+        this(storage, new KeyWrites());
+    }
+
+    /**
+     * Ctor.
+     * @param storage Storage
+     * @param writes Writes coordination of target keys
+     */
+    public Uploads(final Storage storage, final KeyWrites writes) {
+        this.storage = storage;
+        this.writes = writes;
+        this.running = new AtomicBoolean();
+    }
+
+    /**
+     * Remove stale sessions in background periodically until stopped.
+     * @param period Period between cleanings
+     * @param ttl Sessions time to live
+     */
+    public void start(final Duration period, final Duration ttl) {
+        if (this.running.compareAndSet(false, true)) {
+            this.loop(period, ttl);
+        }
+    }
+
+    /**
+     * Stop background cleaning.
+     */
+    public void stop() {
+        this.running.set(false);
+    }
+
+    /**
+     * Start upload session.
+     * @param target Target key
+     * @return Session id
+     */
+    public CompletionStage<String> start(final Key target) {
+        final String id = UUID.randomUUID().toString();
+        return this.storage.save(
+            Uploads.meta(id),
+            new Content.From(
+                String.format("%d\n%s", System.currentTimeMillis(), target.string())
+                    .getBytes(StandardCharsets.UTF_8)
+            )
+        ).thenApply(nothing -> id);
+    }
+
+    /**
+     * Check that session exists and was started for the target key.
+     * @param target Target key
+     * @param id Session id
+     * @return True if session is valid
+     */
+    public CompletionStage<Boolean> valid(final Key target, final String id) {
+        final CompletionStage<Boolean> res;
+        if (Uploads.ID.matcher(id).matches()) {
+            res = this.storage.exists(Uploads.meta(id)).thenCompose(
+                exists -> {
+                    final CompletionStage<Boolean> same;
+                    if (exists) {
+                        same = this.target(id).thenApply(
+                            key -> key.equals(target.string())
+                        );
+                    } else {
+                        same = CompletableFuture.completedFuture(false);
+                    }
+                    return same;
+                }
+            );
+        } else {
+            res = CompletableFuture.completedFuture(false);
+        }
+        return res;
+    }
+
+    /**
+     * Save part of the content, part saved at the same offset is replaced.
+     * @param id Session id
+     * @param offset Offset of the part
+     * @param body Part content
+     * @return Completion
+     */
+    public CompletionStage<Void> part(final String id, final long offset,
+        final Publisher<ByteBuffer> body) {
+        return this.storage.save(
+            new Key.From(Uploads.parts(id), String.format("%019d", offset)),
+            new Content.From(body)
+        );
+    }
+
+    /**
+     * Parts received so far.
+     * @param id Session id
+     * @return Map of parts offsets to parts sizes
+     */
+    public CompletionStage<NavigableMap<Long, Long>> received(final String id) {
+        return this.storage.list(Uploads.parts(id)).thenCompose(
+            keys -> {
+                final List<CompletableFuture<Map.Entry<Long, Long>>> sizes =
+                    new ArrayList<>(keys.size());
+                for (final Key key : keys) {
+                    final long offset = Long.parseLong(new KeyLastPart(key).get());
+                    sizes.add(
+                        this.storage.size(key).thenApply(
+                            size -> new AbstractMap.SimpleImmutableEntry<>(offset, size)
+                        )
+                    );
+                }
+                return CompletableFuture.allOf(sizes.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(
+                        nothing -> {
+                            final NavigableMap<Long, Long> res = new TreeMap<>();
+                            sizes.forEach(
+                                size -> {
+                                    final Map.Entry<Long, Long> entry = size.join();
+                                    res.put(entry.getKey(), entry.getValue());
+                                }
+                            );
+                            return res;
+                        }
+                    );
+            }
+        );
+    }
+
+    /**
+     * Commit upload: assemble parts and move content to the target key.
+     * @param id Session id
+     * @return True if committed, false if parts do not cover content without gaps
+     */
+    public CompletionStage<Boolean> commit(final String id) {
+        return this.received(id).thenCompose(
+            parts -> {
+                final NavigableMap<Long, Long> skips = new TreeMap<>();
+                long total = 0;
+                for (final Map.Entry<Long, Long> part : parts.entrySet()) {
+                    if (part.getKey() > total) {
+                        total = -1;
+                        break;
+                    }
+                    final long end = part.getKey() + part.getValue();
+                    if (end > total) {
+                        skips.put(part.getKey(), total - part.getKey());
+                        total = end;
+                    }
+                }
+                final CompletionStage<Boolean> res;
+                if (total < 0) {
+                    res = CompletableFuture.completedFuture(false);
+                } else {
+                    final Key tmp = new Key.From(Uploads.session(id), "assembled");
+                    res = this.storage.save(
+                        tmp, new Content.From(total, this.concat(id, skips))
+                    ).thenCompose(
+                        nothing -> this.target(id)
+                    ).thenCompose(
+                        target -> this.writes.write(
+                            new Key.From(target),
+                            () -> CompletableFuture.completedFuture(tmp),
+                            (staged, newer) -> {
+                                final CompletionStage<Void> moved;
+                                if (newer) {
+                                    moved = this.storage.move(staged, new Key.From(target));
+                                } else {
+                                    moved = CompletableFuture.allOf();
+                                }
+                                return moved;
+                            }
+                        )
+                    ).thenCompose(
+                        nothing -> this.abort(id)
+                    ).thenApply(nothing -> true);
+                }
+                return res;
+            }
+        );
+    }
+
+    /**
+     * Abort upload session removing all its data.
+     * @param id Session id
+     * @return Completion
+     */
+    public CompletionStage<Void> abort(final String id) {
+        return this.storage.list(Uploads.session(id)).thenCompose(
+            keys -> CompletableFuture.allOf(
+                keys.stream().map(this.storage::delete).toArray(CompletableFuture[]::new)
+            )
+        );
+    }
+
+    /**
+     * Remove sessions started earlier than time to live ago.
+     * @param ttl Sessions time to live
+     * @return Completion
+     */
+    public CompletionStage<Void> clean(final Duration ttl) {
+        return this.storage.list(Uploads.ROOT).thenCompose(
+            keys -> CompletableFuture.allOf(
+                Uploads.ids(keys).stream().map(
+                    id -> this.storage.exists(Uploads.meta(id)).thenCompose(
+                        exists -> {
+                            final CompletionStage<Boolean> expired;
+                            if (exists) {
+                                expired = this.created(id).thenApply(
+                                    time -> time + ttl.toMillis() < System.currentTimeMillis()
+                                );
+                            } else {
+                                expired = CompletableFuture.completedFuture(true);
+                            }
+                            return expired;
+                        }
+                    ).thenCompose(
+                        expired -> {
+                            final CompletionStage<Void> res;
+                            if (expired) {
+                                res = this.abort(id);
+                            } else {
+                                res = CompletableFuture.allOf();
+                            }
+                            return res;
+                        }
+                    ).toCompletableFuture()
+                ).toArray(CompletableFuture[]::new)
+            )
+        );
+    }
+
+    /**
+     * Parts content concatenated in offsets order.
+     * @param id Session id
+     * @param skips Bytes to skip at the start of each part by part offset,
+     *  they are overlapped by previous parts
+     * @return Content publisher
+     */
+    private Publisher<ByteBuffer> concat(final String id, final Map<Long, Long> skips) {
+        return Flowable.fromIterable(skips.entrySet()).concatMap(
+            part -> Single.<Content>create(
+                emitter -> this.storage.value(
+                    new Key.From(Uploads.parts(id), String.format("%019d", part.getKey()))
+                ).whenComplete(
+                    (content, throwable) -> {
+                        if (throwable == null) {
+                            emitter.onSuccess(content);
+                        } else {
+                            emitter.onError(throwable);
+                        }
+                    }
+                )
+            ).flatMapPublisher(content -> Uploads.skip(content, part.getValue()))
+        );
+    }
+
+    /**
+     * Skip first bytes of the content.
+     * @param content Content
+     * @param count Bytes count to skip
+     * @return Rest of the content
+     */
+    private static Flowable<ByteBuffer> skip(final Publisher<ByteBuffer> content,
+        final long count) {
+        final AtomicLong left = new AtomicLong(count);
+        return Flowable.fromPublisher(content).map(
+            buf -> {
+                final ByteBuffer res;
+                final long skipped = Math.min(left.get(), buf.remaining());
+                if (skipped == 0) {
+                    res = buf;
+                } else {
+                    left.addAndGet(-skipped);
+                    res = buf.duplicate();
+                    res.position(res.position() + (int) skipped);
+                }
+                return res;
+            }
+        ).filter(ByteBuffer::hasRemaining);
+    }
+
+    /**
+     * Clean stale sessions until stopped.
+     * @param period Period between cleanings
+     * @param ttl Sessions time to live
+     */
+    private void loop(final Duration period, final Duration ttl) {
+        this.clean(ttl).whenComplete(
+            (nothing, throwable) -> {
+                if (throwable != null) {
+                    Logger.warn(this, "Uploads cleaning failed: %[exception]s", throwable);
+                }
+                if (this.running.get()) {
+                    Completable.timer(period.toMillis(), TimeUnit.MILLISECONDS)
+                        .subscribe(() -> this.loop(period, ttl));
+                }
+            }
+        );
+    }
+
+    /**
+     * Target key of the session.
+     * @param id Session id
+     * @return Target key string
+     */
+    private CompletionStage<String> target(final String id) {
+        return this.metadata(id).thenApply(lines -> lines[1]);
+    }
+
+    /**
+     * Creation time of the session.
+     * @param id Session id
+     * @return Time in milliseconds
+     */
+    private CompletionStage<Long> created(final String id) {
+        return this.metadata(id).thenApply(lines -> Long.parseLong(lines[0]));
+    }
+
+    /**
+     * Session metadata: creation time and target key.
+     * @param id Session id
+     * @return Metadata lines
+     */
+    private CompletionStage<String[]> metadata(final String id) {
+        return this.storage.value(Uploads.meta(id)).thenCompose(
+            content -> new PublisherAs(content).string(StandardCharsets.UTF_8)
+        ).thenApply(text -> text.split("\n", 2));
+    }
+
+    /**
+     * Session ids from keys under sessions root.
+     * @param keys Keys
+     * @return Session ids
+     */
+    private static Collection<String> ids(final Collection<Key> keys) {
+        return keys.stream()
+            .map(key -> key.string().split("/"))
+            .filter(parts -> parts.length > 2 && Uploads.ID.matcher(parts[1]).matches())
+            .map(parts -> parts[1])
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Session key.
+     * @param id Session id
+     * @return Key
+     */
+    private static Key session(final String id) {
+        return new Key.From(Uploads.ROOT, id);
+    }
+
+    /**
+     * Session metadata key.
+     * @param id Session id
+     * @return Key
+     */
+    private static Key meta(final String id) {
+        return new Key.From(Uploads.session(id), "meta");
+    }
+
+    /**
+     * Session parts key.
+     * @param id Session id
+     * @return Key
+     */
+    private static Key parts(final String id) {
+        return new Key.From(Uploads.session(id), "parts");
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Key;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.headers.Location;
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rq.RqParams;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithHeaders;
+import com.artipie.http.rs.RsWithStatus;
+import com.artipie.http.rs.common.RsText;
+import com.artipie.http.rt.RtRule;
+import com.artipie.http.slice.KeyFromPath;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.reactivestreams.Publisher;
+
+/**
+ * Resumable uploads slice.
+ * <p>
+ * Protocol, where `path` is the target file path:
+ * </p>
+ * <ul>
+ *  <li>`POST /path` starts upload session and responds with `201 Created`
+ *   and `Location: /path?upload=id` header;</li>
+ *  <li>`PUT /path?upload=id&amp;offset=n` saves part of the file starting at
+ *   byte `n`, parts may be sent in any order and in parallel;</li>
+ *  <li>`GET /path?upload=id` responds with byte ranges received so far, one
+ *   inclusive `first-last` range per line;</li>
+ *  <li>`POST /path?upload=id` commits upload, the file appears at once and
+ *   completely, `409 Conflict` is returned if some ranges are missing;</li>
+ *  <li>`DELETE /path?upload=id` aborts upload.</li>
+ * </ul>
+ * <p>
+ * Parts may overlap, received ranges merge them as commit assembles them.
+ * Stale sessions are removed by {@link Uploads#start}.
+ * </p>
+ * @since 0.8
+ * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
+ */
+public final class UploadsSlice implements Slice {
+
+    /**
+     * Upload session id parameter.
+     */
+    private static final String UPLOAD = "upload";
+
+    /**
+     * Uploads.
+     */
+    private final Uploads uploads;
+
+    /**
+     * Ctor.
+     * @param uploads Uploads
+     */
+    public UploadsSlice(final Uploads uploads) {
+        this.uploads = uploads;
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final RequestLineFrom rql = new RequestLineFrom(line);
+        final String path = rql.uri().getPath();
+        final Key target = new KeyFromPath(path);
+        final RqParams params = new RqParams(rql.uri());
+        final Optional<String> upload = params.value(UploadsSlice.UPLOAD);
+        final Response res;
+        if (upload.isPresent()) {
+            final String id = upload.get();
+            res = new AsyncResponse(
+                this.uploads.valid(target, id).thenCompose(
+                    valid -> {
+                        final CompletionStage<Response> rsp;
+                        if (valid) {
+                            rsp = this.session(rql.method(), id, params, body);
+                        } else {
+                            rsp = CompletableFuture.completedFuture(
+                                new RsWithStatus(RsStatus.NOT_FOUND)
+                            );
+                        }
+                        return rsp;
+                    }
+                )
+            );
+        } else if (rql.method() == RqMethod.POST) {
+            res = new AsyncResponse(
+                this.uploads.start(target).thenApply(
+                    id -> new RsWithHeaders(
+                        new RsWithStatus(RsStatus.CREATED),
+                        new Location(String.format("%s?%s=%s", path, UploadsSlice.UPLOAD, id))
+                    )
+                )
+            );
+        } else {
+            res = new RsWithStatus(RsStatus.METHOD_NOT_ALLOWED);
+        }
+        return res;
+    }
+
+    /**
+     * Handle request to existing session.
+     * @param method Request method
+     * @param id Session id
+     * @param params Request parameters
+     * @param body Request body
+     * @return Response
+     */
+    private CompletionStage<Response> session(final RqMethod method, final String id,
+        final RqParams params, final Publisher<ByteBuffer> body) {
+        final CompletionStage<Response> res;
+        if (method == RqMethod.PUT) {
+            final long offset = params.value("offset").map(UploadsSlice::offset).orElse(-1L);
+            if (offset < 0) {
+                res = CompletableFuture.completedFuture(new RsWithStatus(RsStatus.BAD_REQUEST));
+            } else {
+                res = this.uploads.part(id, offset, body)
+                    .thenApply(nothing -> new RsWithStatus(RsStatus.CREATED));
+            }
+        } else if (method == RqMethod.GET) {
+            res = this.uploads.received(id).thenApply(
+                parts -> new RsText(UploadsSlice.ranges(parts), StandardCharsets.US_ASCII)
+            );
+        } else if (method == RqMethod.POST) {
+            res = this.uploads.commit(id).thenApply(
+                committed -> {
+                    final Response rsp;
+                    if (committed) {
+                        rsp = new RsWithStatus(RsStatus.CREATED);
+                    } else {
+                        rsp = new RsWithStatus(RsStatus.CONFLICT);
+                    }
+                    return rsp;
+                }
+            );
+        } else if (method == RqMethod.DELETE) {
+            res = this.uploads.abort(id)
+                .thenApply(nothing -> new RsWithStatus(RsStatus.NO_CONTENT));
+        } else {
+            res = CompletableFuture.completedFuture(
+                new RsWithStatus(RsStatus.METHOD_NOT_ALLOWED)
+            );
+        }
+        return res;
+    }
+
+    /**
+     * Parse offset parameter.
+     * @param value Parameter value
+     * @return Offset or -1 if value is not valid
+     */
+    private static long offset(final String value) {
+        long res;
+        try {
+            res = Long.parseLong(value);
+        } catch (final NumberFormatException ex) {
+            res = -1;
+        }
+        return res;
+    }
+
+    /**
+     * Merge parts into byte ranges text.
+     * @param parts Parts offsets and sizes
+     * @return Ranges, one inclusive `first-last` range per line
+     */
+    private static String ranges(final NavigableMap<Long, Long> parts) {
+        final StringBuilder text = new StringBuilder();
+        long start = -1;
+        long end = -1;
+        for (final Map.Entry<Long, Long> part : parts.entrySet()) {
+            if (part.getKey() > end) {
+                UploadsSlice.append(text, start, end);
+                start = part.getKey();
+            }
+            end = Math.max(end, part.getKey() + part.getValue());
+        }
+        UploadsSlice.append(text, start, end);
+        return text.toString();
+    }
+
+    /**
+     * Append range line.
+     * @param text Text
+     * @param start Range start
+     * @param end Range end, exclusive
+     */
+    private static void append(final StringBuilder text, final long start, final long end) {
+        if (start >= 0 && end > start) {
+            text.append(start).append('-').append(end - 1).append('\n');
+        }
+    }
+
+    /**
+     * Rule matching resumable upload requests: `POST` requests and requests
+     * with upload session id.
+     * @since 0.8
+     */
+    public static final class Matches implements RtRule {
+
+        @Override
+        public boolean apply(final String line,
+            final Iterable<Map.Entry<String, String>> headers) {
+            final RequestLineFrom rql = new RequestLineFrom(line);
+            return rql.method() == RqMethod.POST
+                || new RqParams(rql.uri()).value(UploadsSlice.UPLOAD).isPresent();
+        }
+    }
+}
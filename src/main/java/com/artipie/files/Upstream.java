@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.client.ClientSlices;
+import com.artipie.http.client.UriClientSlice;
+import com.artipie.http.client.auth.AuthClientSlice;
+import com.artipie.http.client.auth.Authenticator;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.reactivestreams.Publisher;
+
+/**
+ * Upstream remote slice which keeps moving averages of its latency and
+ * error rate. Latency is measured up to the moment the response status
+ * and headers are received, i.e. time to first byte. Requests rejected by
+ * local {@link BulkheadSlice} are not recorded.
+ * @since 0.8
+ */
+public final class Upstream implements Slice {
+
+    /**
+     * Smoothing factor of moving averages.
+     */
+    private static final double ALPHA = 0.2;
+
+    /**
+     * Error rate penalty multiplier for the score.
+     */
+    private static final double PENALTY = 10.0;
+
+    /**
+     * Latency in nanoseconds a failed call counts as in the score, so fast
+     * failures never make an upstream look better than a slow healthy one.
+     */
+    private static final double FAILURE = 1_000_000_000.0;
+
+    /**
+     * Size of latency samples window used for percentiles.
+     */
+    private static final int WINDOW = 128;
+
+    /**
+     * Origin slice.
+     */
+    private final Slice origin;
+
+    /**
+     * Moving average of successful calls latency in nanoseconds, as double bits.
+     */
+    private final AtomicLong latency;
+
+    /**
+     * Moving average of errors rate, as double bits.
+     */
+    private final AtomicLong errors;
+
+    /**
+     * Requests in flight.
+     */
+    private final AtomicInteger inflight;
+
+    /**
+     * Latest successful calls latency samples in nanoseconds.
+     */
+    private final AtomicLongArray samples;
+
+    /**
+     * Total count of samples recorded.
+     */
+    private final AtomicLong count;
+
+    /**
+     * New upstream.
+     * @param clients HTTP clients
+     * @param remote Remote URI
+     * @param auth Authenticator
+     */
+    public Upstream(final ClientSlices clients, final URI remote, final Authenticator auth) {
+        this(new AuthClientSlice(new UriClientSlice(clients, remote), auth));
+    }
+
+    /**
+     * New upstream with limited concurrent requests.
+     * @param clients HTTP clients
+     * @param remote Remote URI
+     * @param auth Authenticator
+     * @param bulkhead Concurrent requests limit of this upstream
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public Upstream(final ClientSlices clients, final URI remote, final Authenticator auth,
+        final Bulkhead bulkhead) {
+        this(
+            new BulkheadSlice(
+                new AuthClientSlice(new UriClientSlice(clients, remote), auth), bulkhead
+            )
+        );
+    }
+
+    /**
+     * Ctor.
+     * @param origin Origin slice
+     */
+    public Upstream(final Slice origin) {
+        this.origin = origin;
+        this.latency = new AtomicLong(Double.doubleToLongBits(0));
+        this.errors = new AtomicLong(Double.doubleToLongBits(0));
+        this.inflight = new AtomicInteger();
+        this.samples = new AtomicLongArray(Upstream.WINDOW);
+        this.count = new AtomicLong();
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        return connection -> {
+            final long start = System.nanoTime();
+            final AtomicBoolean pending = new AtomicBoolean(true);
+            this.inflight.incrementAndGet();
+            return this.origin.response(line, headers, body).send(
+                (status, rsheaders, rsbody) -> {
+                    if (pending.compareAndSet(true, false)) {
+                        if (BulkheadSlice.rejected(rsheaders)) {
+                            this.inflight.decrementAndGet();
+                        } else {
+                            this.record(System.nanoTime() - start, status.serverError());
+                        }
+                    }
+                    return connection.accept(status, rsheaders, rsbody);
+                }
+            ).whenComplete(
+                (nothing, throwable) -> {
+                    if (throwable != null && pending.compareAndSet(true, false)) {
+                        this.record(System.nanoTime() - start, true);
+                    }
+                }
+            );
+        };
+    }
+
+    /**
+     * Selection score of this upstream, lower is better. Combines moving
+     * latency average of successful calls, requests in flight and moving
+     * error rate. Failed calls count as one second of latency and multiply
+     * the score, so error rate dominates it.
+     * @return Score
+     */
+    public double score() {
+        final double rate = Double.longBitsToDouble(this.errors.get());
+        return (Double.longBitsToDouble(this.latency.get()) + rate * Upstream.FAILURE)
+            * (this.inflight.get() + 1)
+            * (1 + Upstream.PENALTY * rate);
+    }
+
+    /**
+     * Latency percentile over the latest successful calls.
+     * @param quantile Quantile in range from 0 to 1
+     * @return Latency in nanoseconds, empty if nothing was recorded yet
+     */
+    public Optional<Long> percentile(final double quantile) {
+        final int size = (int) Math.min(this.count.get(), Upstream.WINDOW);
+        final Optional<Long> res;
+        if (size == 0) {
+            res = Optional.empty();
+        } else {
+            final long[] sorted = new long[size];
+            for (int pos = 0; pos < size; pos += 1) {
+                sorted[pos] = this.samples.get(pos);
+            }
+            Arrays.sort(sorted);
+            final int idx = (int) Math.ceil(quantile * size) - 1;
+            res = Optional.of(sorted[Math.max(0, Math.min(size - 1, idx))]);
+        }
+        return res;
+    }
+
+    /**
+     * Record request outcome, latency is sampled for successful calls only.
+     * @param nanos Latency in nanoseconds
+     * @param failed Whether request failed
+     */
+    private void record(final long nanos, final boolean failed) {
+        this.inflight.decrementAndGet();
+        final double sample;
+        if (failed) {
+            sample = 1;
+        } else {
+            sample = 0;
+            this.samples.set((int) (this.count.getAndIncrement() % Upstream.WINDOW), nanos);
+            this.latency.updateAndGet(
+                bits -> {
+                    final double prev = Double.longBitsToDouble(bits);
+                    final double next;
+                    if (prev == 0) {
+                        next = nanos;
+                    } else {
+                        next = Upstream.average(prev, nanos);
+                    }
+                    return Double.doubleToLongBits(next);
+                }
+            );
+        }
+        this.errors.updateAndGet(
+            bits -> Double.doubleToLongBits(
+                Upstream.average(Double.longBitsToDouble(bits), sample)
+            )
+        );
+    }
+
+    /**
+     * Next value of exponential moving average.
+     * @param prev Previous average
+     * @param sample New sample
+     * @return Next average
+     */
+    private static double average(final double prev, final double sample) {
+        return prev + Upstream.ALPHA * (sample - prev);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.ext.CompletableFutureSupport;
+import com.artipie.http.Headers;
+import com.artipie.http.Slice;
+import com.artipie.http.headers.ContentLength;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import io.reactivex.Flowable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replication target uploading content to remote slice with `PUT` requests.
+ * Removal does nothing: proxy never deletes remote content, missing local
+ * copy means it was evicted from cache.
+ * @since 0.8
+ */
+public final class UpstreamTarget implements Replication.Target {
+
+    /**
+     * Remote slice.
+     */
+    private final Slice remote;
+
+    /**
+     * Ctor.
+     * @param remote Remote slice
+     */
+    public UpstreamTarget(final Slice remote) {
+        this.remote = remote;
+    }
+
+    @Override
+    public CompletableFuture<Void> save(final Key key, final Content content) {
+        final AtomicReference<RsStatus> status = new AtomicReference<>();
+        return this.remote.response(
+            new RequestLine(RqMethod.PUT, String.format("/%s", key.string())).toString(),
+            content.size().<Headers>map(size -> new Headers.From(new ContentLength(size)))
+                .orElse(Headers.EMPTY),
+            content
+        ).send(
+            (rsstatus, rsheaders, rsbody) -> {
+                status.set(rsstatus);
+                final CompletableFuture<Void> res = new CompletableFuture<>();
+                Flowable.fromPublisher(rsbody).ignoreElements()
+                    .subscribe(() -> res.complete(null), res::completeExceptionally);
+                return res;
+            }
+        ).thenCompose(
+            nothing -> {
+                final CompletableFuture<Void> res;
+                if (status.get().success()) {
+                    res = CompletableFuture.allOf();
+                } else {
+                    res = new CompletableFutureSupport.Failed<Void>(
+                        new IllegalStateException(
+                            String.format(
+                                "Upstream rejected %s with %s", key.string(), status.get()
+                            )
+                        )
+                    ).get();
+                }
+                return res;
+            }
+        ).toCompletableFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(final Key key) {
+        return CompletableFuture.allOf();
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.auth.Action;
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.auth.BasicAuthSlice;
+import com.artipie.http.auth.Permission;
+import com.artipie.http.auth.Permissions;
+import com.artipie.http.client.ClientSlices;
+import com.artipie.http.client.UriClientSlice;
+import com.artipie.http.client.auth.AuthClientSlice;
+import com.artipie.http.client.auth.Authenticator;
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsFull;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import com.artipie.http.slice.ContentWithSize;
+import com.artipie.http.slice.KeyFromPath;
+import io.reactivex.Flowable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import org.reactivestreams.Publisher;
+
+/**
+ * Files proxy in write-back mode: uploads are saved to local cache storage
+ * and acknowledged at once, then pushed to remote in background by
+ * {@link Replication} with {@link UpstreamTarget}. Its queue is persisted
+ * in cache storage under `.writeback` key. Reads wait until uploads left
+ * after restart are recovered from the queue, call {@link #recover()} on
+ * start to push them without waiting for the first read. Reads of keys not
+ * pushed yet are served from local copy, other reads are proxied by
+ * {@link FileProxySlice}. Uploads and cache fills of the proxy are
+ * coordinated by {@link KeyWrites}: a fill is skipped while an upload of the
+ * key is in progress or not pushed yet, so remote content fetched before an
+ * upload never replaces it. Uploads are pushed with proxy credentials, so
+ * they require write permission, internal keys are not served or written.
+ * @since 0.8
+ */
+public final class WriteBackSlice implements Slice {
+
+    /**
+     * Root key of write-back queue.
+     */
+    static final Key ROOT = new Key.From(".writeback");
+
+    /**
+     * Proxy slice.
+     */
+    private final Slice proxy;
+
+    /**
+     * Cache storage.
+     */
+    private final Storage cache;
+
+    /**
+     * Uploads pushing.
+     */
+    private final Replication pushes;
+
+    /**
+     * Uploads slice.
+     */
+    private final Slice uploads;
+
+    /**
+     * New write-back files proxy.
+     * @param clients HTTP clients
+     * @param remote Remote URI
+     * @param auth Authenticator
+     * @param cache Cache storage
+     * @param perms Permissions of uploads
+     * @param users Authentication of uploads
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public WriteBackSlice(final ClientSlices clients, final URI remote,
+        final Authenticator auth, final Storage cache, final Permissions perms,
+        final Authentication users) {
+        this(
+            new AuthClientSlice(new UriClientSlice(clients, remote), auth),
+            cache, perms, users
+        );
+    }
+
+    /**
+     * New write-back files proxy pushing uploads in batches of 50 keys over
+     * 2 connections with 10 attempts starting with 5 seconds backoff.
+     * @param remote Remote slice
+     * @param cache Cache storage
+     * @param perms Permissions of uploads
+     * @param users Authentication of uploads
+     */
+    public WriteBackSlice(final Slice remote, final Storage cache, final Permissions perms,
+        final Authentication users) {
+        this(
+            remote, cache,
+            new Replication(
+                cache, new UpstreamTarget(remote), WriteBackSlice.ROOT, 50, 2, 10, 5000
+            ),
+            perms, users
+        );
+    }
+
+    /**
+     * Ctor.
+     * @param remote Remote slice, guarded by default circuit breaker for reads
+     * @param cache Cache storage
+     * @param pushes Uploads pushing
+     * @param perms Permissions of uploads
+     * @param users Authentication of uploads
+     * @checkstyle ParameterNumberCheck (5 lines)
+     */
+    public WriteBackSlice(final Slice remote, final Storage cache, final Replication pushes,
+        final Permissions perms, final Authentication users) {
+        final KeyWrites writes = new KeyWrites();
+        this.proxy = new FileProxySlice.Builder()
+            .remote(remote)
+            .storage(new Fills(cache, writes, pushes))
+            .build();
+        this.cache = cache;
+        this.pushes = pushes;
+        this.uploads = new BasicAuthSlice(
+            new Upload(cache, writes, pushes), users,
+            new Permission.ByName(perms, Action.Standard.WRITE)
+        );
+    }
+
+    @Override
+    public Response response(
+        final String line, final Iterable<Map.Entry<String, String>> headers,
+        final Publisher<ByteBuffer> body
+    ) {
+        final RequestLineFrom rqline = new RequestLineFrom(line);
+        final Key key = new KeyFromPath(rqline.uri().getPath());
+        final Response res;
+        if (InternalKeys.internal(key.string())) {
+            res = new RsWithStatus(RsStatus.NOT_FOUND);
+        } else if (rqline.method() == RqMethod.PUT) {
+            res = this.uploads.response(line, headers, body);
+        } else if (rqline.method() == RqMethod.GET) {
+            res = new AsyncResponse(
+                this.pushes.recover().thenCompose(
+                    nothing -> {
+                        final CompletionStage<Response> local;
+                        if (this.pushes.pending(key)) {
+                            local = this.cache.value(key).thenApply(
+                                content -> new RsFull(RsStatus.OK, Headers.EMPTY, content)
+                            );
+                        } else {
+                            local = CompletableFuture.completedFuture(
+                                this.proxy.response(line, headers, body)
+                            );
+                        }
+                        return local;
+                    }
+                )
+            );
+        } else {
+            res = this.proxy.response(line, headers, body);
+        }
+        return res;
+    }
+
+    /**
+     * Push uploads left after restart.
+     * @return Completion of recovery
+     */
+    public CompletionStage<Void> recover() {
+        return this.pushes.recover();
+    }
+
+    /**
+     * Upload saving content to cache storage and enqueuing its push. Content
+     * is staged under `.staging` key and moved to the key by {@link KeyWrites},
+     * content of uploads superseded by newer ones is discarded.
+     * @since 0.8
+     */
+    private static final class Upload implements Slice {
+
+        /**
+         * Cache storage.
+         */
+        private final Storage cache;
+
+        /**
+         * Writes coordination.
+         */
+        private final KeyWrites writes;
+
+        /**
+         * Uploads pushing.
+         */
+        private final Replication pushes;
+
+        /**
+         * Ctor.
+         * @param cache Cache storage
+         * @param writes Writes coordination
+         * @param pushes Uploads pushing
+         */
+        Upload(final Storage cache, final KeyWrites writes, final Replication pushes) {
+            this.cache = cache;
+            this.writes = writes;
+            this.pushes = pushes;
+        }
+
+        @Override
+        public Response response(
+            final String line, final Iterable<Map.Entry<String, String>> headers,
+            final Publisher<ByteBuffer> body
+        ) {
+            final Key key = new KeyFromPath(new RequestLineFrom(line).uri().getPath());
+            final Key tmp = new Key.From(CoordinatedUpload.STAGING, UUID.randomUUID().toString());
+            return new AsyncResponse(
+                this.writes.write(
+                    key,
+                    () -> this.cache.save(tmp, new ContentWithSize(body, headers))
+                        .thenApply(nothing -> tmp),
+                    (staged, newer) -> {
+                        final CompletableFuture<Void> res;
+                        if (newer) {
+                            res = this.cache.move(staged, key)
+                                .thenRun(() -> this.pushes.changed(key));
+                        } else {
+                            res = this.cache.delete(staged);
+                        }
+                        return res;
+                    }
+                ).thenApply(nothing -> new RsWithStatus(RsStatus.CREATED))
+            );
+        }
+    }
+
+    /**
+     * Cache storage of the proxy, which saves remote content as a fill
+     * yielding to uploads: it is skipped while an upload of the key is in
+     * progress or the key is not pushed yet, remote content is discarded
+     * then.
+     * @since 0.8
+     */
+    private static final class Fills implements Storage {
+
+        /**
+         * Cache storage.
+         */
+        private final Storage cache;
+
+        /**
+         * Writes coordination.
+         */
+        private final KeyWrites writes;
+
+        /**
+         * Uploads pushing.
+         */
+        private final Replication pushes;
+
+        /**
+         * Ctor.
+         * @param cache Cache storage
+         * @param writes Writes coordination
+         * @param pushes Uploads pushing
+         */
+        Fills(final Storage cache, final KeyWrites writes, final Replication pushes) {
+            this.cache = cache;
+            this.writes = writes;
+            this.pushes = pushes;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> exists(final Key key) {
+            return this.cache.exists(key);
+        }
+
+        @Override
+        public CompletableFuture<Collection<Key>> list(final Key prefix) {
+            return this.cache.list(prefix);
+        }
+
+        @Override
+        public CompletableFuture<Void> save(final Key key, final Content content) {
+            return this.writes.fill(
+                key,
+                () -> {
+                    final CompletionStage<Boolean> res;
+                    if (this.pushes.pending(key)) {
+                        res = CompletableFuture.completedFuture(false);
+                    } else {
+                        res = this.cache.save(key, content).thenApply(nothing -> true);
+                    }
+                    return res;
+                }
+            ).thenCompose(
+                filled -> {
+                    final CompletableFuture<Void> res;
+                    if (filled) {
+                        res = CompletableFuture.allOf();
+                    } else {
+                        res = Fills.discard(content);
+                    }
+                    return res;
+                }
+            ).toCompletableFuture();
+        }
+
+        @Override
+        public CompletableFuture<Void> move(final Key source, final Key destination) {
+            return this.cache.move(source, destination);
+        }
+
+        @Override
+        public CompletableFuture<Long> size(final Key key) {
+            return this.cache.size(key);
+        }
+
+        @Override
+        public CompletableFuture<Content> value(final Key key) {
+            return this.cache.value(key);
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(final Key key) {
+            return this.cache.delete(key);
+        }
+
+        @Override
+        public <T> CompletionStage<T> exclusively(final Key key,
+            final Function<Storage, CompletionStage<T>> operation) {
+            return this.cache.exclusively(key, operation);
+        }
+
+        /**
+         * Read and discard content.
+         * @param content Content
+         * @return Completion
+         */
+        private static CompletableFuture<Void> discard(final Content content) {
+            final CompletableFuture<Void> res = new CompletableFuture<>();
+            Flowable.fromPublisher(content).subscribe(
+                buf -> { }, res::completeExceptionally, () -> res.complete(null)
+            );
+            return res;
+        }
+    }
+}
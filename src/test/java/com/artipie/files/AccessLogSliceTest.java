@@ -0,0 +1,175 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.cache.FromRemoteCache;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.auth.Action;
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.auth.BasicAuthSlice;
+import com.artipie.http.auth.Permission;
+import com.artipie.http.headers.Authorization;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsFull;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link AccessLogSlice} and {@link AccessLog}.
+ *
+ * @since 0.8
+ */
+final class AccessLogSliceTest {
+
+    @Test
+    void writesProxyRequestRecord(@TempDir final Path dir) throws Exception {
+        final Path file = dir.resolve("access.log");
+        final AccessLog log = new AccessLog(file, 16, AccessLog.Policy.DROP);
+        MatcherAssert.assertThat(
+            new AccessLogSlice(
+                new FileProxySlice(
+                    (line, headers, body) -> new RsFull(
+                        RsStatus.OK, Headers.EMPTY, new Content.From("data".getBytes())
+                    ),
+                    new FromRemoteCache(new InMemoryStorage())
+                ),
+                log
+            ),
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.OK),
+                new RequestLine(RqMethod.GET, "/lib/file.jar")
+            )
+        );
+        log.close();
+        MatcherAssert.assertThat(
+            new String(Files.readAllBytes(file), StandardCharsets.UTF_8),
+            Matchers.allOf(
+                Matchers.containsString("\t-\t-\tGET\t/lib/file.jar\t200\t4\t"),
+                Matchers.endsWith("\tMISS\n")
+            )
+        );
+    }
+
+    @Test
+    void escapesFieldsAndMarksClaimedUsers(@TempDir final Path dir) throws Exception {
+        final Path file = dir.resolve("audit.log");
+        final AccessLog log = new AccessLog(file, 16, AccessLog.Policy.DROP);
+        final AtomicInteger checks = new AtomicInteger();
+        final AuthCache cache = new AuthCache(
+            (name, pass) -> {
+                checks.incrementAndGet();
+                return Optional.of(new Authentication.User(name))
+                    .filter(user -> "secret".equals(pass));
+            },
+            (user, action) -> "alice".equals(user.name()), Duration.ofMinutes(1), 10
+        );
+        final AccessLogSlice slice = new AccessLogSlice(
+            new BasicAuthSlice(
+                (line, headers, body) -> new RsWithStatus(RsStatus.OK),
+                cache, new Permission.ByName(cache, Action.Standard.READ)
+            ),
+            log, cache
+        );
+        slice.response(
+            new RequestLine(RqMethod.GET, "/a%0Aforged").toString(),
+            new Headers.From(new Authorization.Basic("eve\tadmin\nforged", "guess")),
+            Content.EMPTY
+        ).send((status, headers, body) -> CompletableFuture.allOf())
+            .toCompletableFuture().join();
+        slice.response(
+            new RequestLine(RqMethod.GET, "/ok").toString(),
+            new Headers.From(new Authorization.Basic("alice", "secret")),
+            Content.EMPTY
+        ).send((status, headers, body) -> CompletableFuture.allOf())
+            .toCompletableFuture().join();
+        log.close();
+        final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(
+            "Each request should be one record", lines.size(), new IsEqual<>(2)
+        );
+        MatcherAssert.assertThat(
+            "Unverified user should be claimed and escaped",
+            lines.get(0),
+            Matchers.containsString("\tclaimed:eve\\tadmin\\nforged\t-\tGET\t/a%0Aforged\t")
+        );
+        MatcherAssert.assertThat(
+            "Verified user should be logged as is",
+            lines.get(1),
+            Matchers.containsString("\talice\t-\tGET\t/ok\t")
+        );
+        MatcherAssert.assertThat(
+            "Credentials should be checked by authentication layer only",
+            checks.get(),
+            new IsEqual<>(2)
+        );
+    }
+
+    @Test
+    void countsDroppedRecords(@TempDir final Path dir) {
+        final AccessLog log = new AccessLog(
+            dir.resolve("dropped.log"), 2, AccessLog.Policy.BLOCK
+        );
+        log.close();
+        MatcherAssert.assertThat(
+            new AccessLogSlice((line, headers, body) -> new RsWithStatus(RsStatus.OK), log),
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.OK), new RequestLine(RqMethod.GET, "/")
+            )
+        );
+        MatcherAssert.assertThat(log.dropped(), new IsEqual<>(1L));
+    }
+
+    @Test
+    void rollsFile(@TempDir final Path dir) {
+        final Path file = dir.resolve("roll.log");
+        for (int idx = 0; idx < 2; idx += 1) {
+            final AccessLog log = new AccessLog(file, 4, AccessLog.Policy.DROP, 1, 1);
+            log.record(String.valueOf(idx));
+            log.close();
+        }
+        MatcherAssert.assertThat(
+            "Old file should be kept",
+            Files.exists(dir.resolve("roll.log.1")),
+            new IsEqual<>(true)
+        );
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.auth.Permissions;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link AuthCache}.
+ *
+ * @since 0.8
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+final class AuthCacheTest {
+
+    @Test
+    void cachesSuccessfulAuthentication() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Authentication origin = new Authentication.Single("alice", "secret");
+        final AuthCache cache = new AuthCache(
+            (name, pass) -> {
+                calls.incrementAndGet();
+                return origin.user(name, pass);
+            },
+            Permissions.FREE, Duration.ofMinutes(1), 10
+        );
+        for (int idx = 0; idx < 3; idx += 1) {
+            MatcherAssert.assertThat(
+                "User should be authenticated",
+                cache.user("alice", "secret").isPresent(),
+                new IsEqual<>(true)
+            );
+        }
+        MatcherAssert.assertThat(
+            "Wrong password should not be accepted",
+            cache.user("alice", "wrong").isPresent(),
+            new IsEqual<>(false)
+        );
+        MatcherAssert.assertThat(
+            "Origin should be called once per credentials",
+            calls.get(),
+            new IsEqual<>(2)
+        );
+        cache.invalidate("alice");
+        cache.user("alice", "secret");
+        MatcherAssert.assertThat(
+            "Invalidated user should be authenticated again",
+            calls.get(),
+            new IsEqual<>(3)
+        );
+    }
+
+    @Test
+    void expiresDecisions() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final AuthCache cache = new AuthCache(
+            (name, pass) -> Optional.empty(),
+            (user, action) -> calls.incrementAndGet() > 0,
+            Duration.ofMillis(1), 10
+        );
+        final Authentication.User user = new Authentication.User("bob");
+        cache.allowed(user, "read");
+        Thread.sleep(5);
+        cache.allowed(user, "read");
+        MatcherAssert.assertThat(calls.get(), new IsEqual<>(2));
+    }
+
+    @Test
+    void keepsCapacity() {
+        final AtomicInteger calls = new AtomicInteger();
+        final AuthCache cache = new AuthCache(
+            (name, pass) -> Optional.empty(),
+            (user, action) -> calls.incrementAndGet() > 0,
+            Duration.ofMinutes(1), 2
+        );
+        final Authentication.User user = new Authentication.User("carol");
+        cache.allowed(user, "read");
+        cache.allowed(user, "write");
+        cache.allowed(user, "delete");
+        cache.allowed(user, "delete");
+        MatcherAssert.assertThat("Hits should be counted", cache.hits(), new IsEqual<>(1L));
+        MatcherAssert.assertThat("Misses should be counted", cache.misses(), new IsEqual<>(3L));
+        cache.allowed(user, "read");
+        MatcherAssert.assertThat(
+            "Evicted decision should be requested again",
+            calls.get(),
+            new IsEqual<>(4)
+        );
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.cache.Cache;
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import com.artipie.http.rs.StandardRs;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link BulkheadSlice} and {@link Bulkhead}.
+ *
+ * @since 0.8
+ */
+final class BulkheadSliceTest {
+
+    @Test
+    void queuesRequestOverLimitUntilPermitIsReleased() {
+        final Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofMinutes(1));
+        final CompletableFuture<Response> first = new CompletableFuture<>();
+        final BulkheadSlice slice = new BulkheadSlice(
+            (line, headers, body) -> new AsyncResponse(first), bulkhead
+        );
+        final CompletionStage<Void> running = BulkheadSliceTest.send(slice);
+        final CompletionStage<Void> queued = BulkheadSliceTest.send(slice);
+        MatcherAssert.assertThat(
+            "One request is active and one is queued",
+            new int[] {bulkhead.active(), bulkhead.queued()},
+            new IsEqual<>(new int[] {1, 1})
+        );
+        first.complete(StandardRs.OK);
+        running.toCompletableFuture().join();
+        queued.toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "All permits are released",
+            new int[] {bulkhead.active(), bulkhead.queued()},
+            new IsEqual<>(new int[] {0, 0})
+        );
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        final Bulkhead bulkhead = new Bulkhead(1, 0, Duration.ofMinutes(1));
+        final BulkheadSlice slice = new BulkheadSlice(
+            (line, headers, body) -> new AsyncResponse(new CompletableFuture<>()), bulkhead
+        );
+        BulkheadSliceTest.send(slice);
+        MatcherAssert.assertThat(
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.UNAVAILABLE),
+                new RequestLine(RqMethod.GET, "/any")
+            )
+        );
+        MatcherAssert.assertThat(bulkhead.rejected(), new IsEqual<>(1L));
+    }
+
+    @Test
+    void rejectsWhenQueueTimeoutExpires() {
+        final Bulkhead bulkhead = new Bulkhead(1, 1, Duration.ofMillis(10));
+        final BulkheadSlice slice = new BulkheadSlice(
+            (line, headers, body) -> new AsyncResponse(new CompletableFuture<>()), bulkhead
+        );
+        BulkheadSliceTest.send(slice);
+        MatcherAssert.assertThat(
+            "Request should time out in queue",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.UNAVAILABLE),
+                new RequestLine(RqMethod.GET, "/file")
+            )
+        );
+        MatcherAssert.assertThat("Queue should be empty", bulkhead.queued(), new IsEqual<>(0));
+    }
+
+    @Test
+    void proxyFallsBackToNotFoundWhenRejected() {
+        final Bulkhead bulkhead = new Bulkhead(1, 0, Duration.ofMinutes(1));
+        bulkhead.acquire();
+        MatcherAssert.assertThat(
+            new FileProxySlice(
+                new BulkheadSlice(
+                    (line, headers, body) -> new RsWithStatus(RsStatus.OK), bulkhead
+                ),
+                Cache.NOP
+            ),
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NOT_FOUND),
+                new RequestLine(RqMethod.GET, "/some")
+            )
+        );
+    }
+
+    @Test
+    void rejectionsAreNotCountedAsUpstreamFailures() {
+        final Bulkhead bulkhead = new Bulkhead(1, 0, Duration.ofMinutes(1));
+        bulkhead.acquire();
+        final Upstream upstream = new Upstream(
+            new BulkheadSlice((line, headers, body) -> StandardRs.OK, bulkhead)
+        );
+        final CircuitBreaker breaker = new CircuitBreaker(
+            0.5, 2, 1, Duration.ofMinutes(1), Duration.ofMinutes(1)
+        );
+        final CircuitBreakerSlice slice = new CircuitBreakerSlice(upstream, breaker);
+        for (int idx = 0; idx < 3; idx += 1) {
+            slice.response(
+                new RequestLine(RqMethod.GET, "/").toString(), Headers.EMPTY, Content.EMPTY
+            ).send((status, headers, body) -> CompletableFuture.allOf())
+                .toCompletableFuture().join();
+        }
+        MatcherAssert.assertThat(
+            "Breaker should stay closed",
+            breaker.state(),
+            new IsEqual<>(CircuitBreaker.State.CLOSED)
+        );
+        MatcherAssert.assertThat(
+            "Upstream should not be penalized", upstream.score(), new IsEqual<>(0.0)
+        );
+    }
+
+    /**
+     * Send GET request to slice.
+     * @param slice Slice
+     * @return Completion of response
+     */
+    private static CompletionStage<Void> send(final BulkheadSlice slice) {
+        return slice.response(
+            new RequestLine(RqMethod.GET, "/").toString(),
+            Headers.EMPTY,
+            Content.EMPTY
+        ).send((status, headers, body) -> CompletableFuture.allOf());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.cache.FromRemoteCache;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.hm.RsHasBody;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link CircuitBreakerSlice} and {@link CircuitBreaker}.
+ *
+ * @since 0.8
+ * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+final class CircuitBreakerSliceTest {
+
+    @Test
+    void opensOnFailuresAndServesFromCache() {
+        final Storage storage = new InMemoryStorage();
+        final byte[] body = "cached".getBytes();
+        storage.save(new Key.From("file"), new Content.From(body)).join();
+        final AtomicInteger calls = new AtomicInteger();
+        final CircuitBreaker breaker = new CircuitBreaker(
+            0.5, 4, 2, Duration.ofHours(1), Duration.ofMinutes(1)
+        );
+        final FileProxySlice slice = new FileProxySlice(
+            new CircuitBreakerSlice(
+                (line, headers, pub) -> {
+                    calls.incrementAndGet();
+                    return new RsWithStatus(RsStatus.INTERNAL_ERROR);
+                },
+                breaker
+            ),
+            new FromRemoteCache(storage)
+        );
+        for (int idx = 0; idx < 3; idx += 1) {
+            MatcherAssert.assertThat(
+                slice,
+                new SliceHasResponse(
+                    Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(body)),
+                    new RequestLine(RqMethod.GET, "/file")
+                )
+            );
+        }
+        MatcherAssert.assertThat(
+            "Breaker should be open",
+            breaker.state(),
+            new IsEqual<>(CircuitBreaker.State.OPEN)
+        );
+        MatcherAssert.assertThat(
+            "Remote should not be called while breaker is open",
+            calls.get(),
+            new IsEqual<>(2)
+        );
+    }
+
+    @Test
+    void countsTimeoutAsFailure() {
+        final CircuitBreaker breaker = new CircuitBreaker(
+            0.5, 1, 1, Duration.ofHours(1), Duration.ofMillis(10)
+        );
+        MatcherAssert.assertThat(
+            new CircuitBreakerSlice(
+                (line, headers, pub) -> new AsyncResponse(new CompletableFuture<>()),
+                breaker
+            ),
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.UNAVAILABLE),
+                new RequestLine(RqMethod.GET, "/slow")
+            )
+        );
+        MatcherAssert.assertThat(
+            breaker.state(),
+            new IsEqual<>(CircuitBreaker.State.OPEN)
+        );
+    }
+
+    @Test
+    void servesFromCacheWhenOriginFails() {
+        final Storage storage = new InMemoryStorage();
+        final byte[] body = "kept".getBytes();
+        storage.save(new Key.From("down"), new Content.From(body)).join();
+        final CircuitBreaker breaker = new CircuitBreaker(
+            0.5, 1, 1, Duration.ofHours(1), Duration.ofMinutes(1)
+        );
+        final CompletableFuture<Void> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("Connection refused"));
+        MatcherAssert.assertThat(
+            new FileProxySlice(
+                new CircuitBreakerSlice((line, headers, pub) -> connection -> failed, breaker),
+                new FromRemoteCache(storage)
+            ),
+            new SliceHasResponse(
+                Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(body)),
+                new RequestLine(RqMethod.GET, "/down")
+            )
+        );
+        MatcherAssert.assertThat(
+            "Failure should be counted",
+            breaker.state(),
+            new IsEqual<>(CircuitBreaker.State.OPEN)
+        );
+    }
+
+    @Test
+    void closesAfterSuccessfulProbe() {
+        final CircuitBreaker breaker = new CircuitBreaker(
+            0.5, 1, 1, Duration.ZERO, Duration.ofMinutes(1)
+        );
+        breaker.failure();
+        final CircuitBreakerSlice slice = new CircuitBreakerSlice(
+            (line, headers, pub) -> new RsWithStatus(RsStatus.OK), breaker
+        );
+        MatcherAssert.assertThat(
+            "Request which starts the probe is not sent to remote",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.UNAVAILABLE),
+                new RequestLine(RqMethod.GET, "/probe")
+            )
+        );
+        MatcherAssert.assertThat(
+            "Breaker should be closed by probe",
+            breaker.state(),
+            new IsEqual<>(CircuitBreaker.State.CLOSED)
+        );
+        MatcherAssert.assertThat(
+            "Breaker transitions should be counted",
+            new long[] {
+                breaker.transitions(CircuitBreaker.State.OPEN),
+                breaker.transitions(CircuitBreaker.State.HALF_OPEN),
+                breaker.transitions(CircuitBreaker.State.CLOSED),
+            },
+            new IsEqual<>(new long[] {1, 1, 1})
+        );
+    }
+}
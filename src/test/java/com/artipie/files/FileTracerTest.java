@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.hm.RsHasBody;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsFull;
+import com.artipie.http.rs.RsStatus;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for {@link FileTracer} with {@link FileProxySlice}.
+ *
+ * @since 0.8
+ */
+final class FileTracerTest {
+
+    @Test
+    void tracesProxyPhases(@TempDir final Path dir) throws Exception {
+        final Path file = dir.resolve("spans.log");
+        final AccessLog log = new AccessLog(file, 64, AccessLog.Policy.BLOCK);
+        final byte[] data = "content".getBytes();
+        MatcherAssert.assertThat(
+            new FileProxySlice.Builder()
+                .upstreams(
+                    Collections.singletonList(
+                        new Upstream(
+                            (line, headers, body) -> new RsFull(
+                                RsStatus.OK, Headers.EMPTY, new Content.From(data)
+                            )
+                        )
+                    )
+                )
+                .storage(new InMemoryStorage())
+                .tracer(new FileTracer(log))
+                .build(),
+            new SliceHasResponse(
+                new RsHasBody(data), new RequestLine(RqMethod.GET, "/traced.txt")
+            )
+        );
+        log.close();
+        final List<String> spans = Files.readAllLines(file, StandardCharsets.UTF_8);
+        MatcherAssert.assertThat(
+            "All phases should be traced",
+            spans.stream().map(span -> span.split("\t")[3]).collect(Collectors.toList()),
+            Matchers.containsInAnyOrder(
+                "proxy", "cache.load", "upstream", "upstream.body", "response"
+            )
+        );
+        MatcherAssert.assertThat(
+            "Spans should share trace id",
+            spans.stream().map(span -> span.split("\t")[0]).distinct().count(),
+            Matchers.equalTo(1L)
+        );
+        MatcherAssert.assertThat(
+            "Root span should be tagged",
+            spans,
+            Matchers.hasItem(
+                Matchers.allOf(
+                    Matchers.containsString("\tproxy\t"),
+                    Matchers.containsString("key=traced.txt"),
+                    Matchers.containsString("outcome=MISS"),
+                    Matchers.containsString("status=200")
+                )
+            )
+        );
+        MatcherAssert.assertThat(
+            "Response bytes should be counted",
+            spans,
+            Matchers.hasItem(
+                Matchers.allOf(
+                    Matchers.containsString("\tresponse\t"),
+                    Matchers.containsString(String.format("bytes=%d", data.length))
+                )
+            )
+        );
+    }
+
+    @Test
+    void escapesTags(@TempDir final Path dir) throws Exception {
+        final Path file = dir.resolve("escaped.log");
+        final AccessLog log = new AccessLog(file, 4, AccessLog.Policy.BLOCK);
+        new FileTracer(log).span("files.get").tag("key", "a\nforged\tline").end();
+        log.close();
+        MatcherAssert.assertThat(
+            Files.readAllLines(file, StandardCharsets.UTF_8),
+            Matchers.contains(Matchers.endsWith("\tkey=a\\nforged\\tline"))
+        );
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.http.Headers;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.hm.RsHasBody;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsFull;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import com.artipie.http.slice.SliceSimple;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link HedgedSlice}.
+ *
+ * @since 0.8
+ * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+final class HedgedSliceTest {
+
+    @Test
+    void hedgesToSecondUpstreamWhenFirstIsSlow() {
+        final byte[] body = "fast".getBytes();
+        MatcherAssert.assertThat(
+            new HedgedSlice(
+                Arrays.asList(
+                    new Upstream(
+                        (line, headers, pub) -> new AsyncResponse(new CompletableFuture<>())
+                    ),
+                    new Upstream(
+                        new SliceSimple(
+                            new RsFull(RsStatus.OK, Headers.EMPTY, new Content.From(body))
+                        )
+                    )
+                ),
+                0.95,
+                Duration.ofMillis(10)
+            ),
+            new SliceHasResponse(
+                Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(body)),
+                new RequestLine(RqMethod.GET, "/any")
+            )
+        );
+    }
+
+    @Test
+    void hedgesImmediatelyOnError() {
+        final byte[] body = "second".getBytes();
+        MatcherAssert.assertThat(
+            new HedgedSlice(
+                Arrays.asList(
+                    new Upstream(new SliceSimple(new RsWithStatus(RsStatus.INTERNAL_ERROR))),
+                    new Upstream(
+                        new SliceSimple(
+                            new RsFull(RsStatus.OK, Headers.EMPTY, new Content.From(body))
+                        )
+                    )
+                ),
+                0.95,
+                Duration.ofHours(1)
+            ),
+            new SliceHasResponse(
+                Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(body)),
+                new RequestLine(RqMethod.GET, "/file")
+            )
+        );
+    }
+
+    @Test
+    void returnsLastStatusWhenAllUpstreamsFail() {
+        MatcherAssert.assertThat(
+            new HedgedSlice(
+                Arrays.asList(
+                    new Upstream(new SliceSimple(new RsWithStatus(RsStatus.INTERNAL_ERROR))),
+                    new Upstream(new SliceSimple(new RsWithStatus(RsStatus.NOT_FOUND)))
+                ),
+                0.95,
+                Duration.ofHours(1)
+            ),
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NOT_FOUND),
+                new RequestLine(RqMethod.GET, "/missing")
+            )
+        );
+    }
+
+    @Test
+    void prefersFasterUpstream() {
+        final AtomicInteger slow = new AtomicInteger();
+        final Upstream first = new Upstream(
+            (line, headers, pub) -> {
+                slow.incrementAndGet();
+                return new AsyncResponse(
+                    CompletableFuture.supplyAsync(
+                        () -> {
+                            try {
+                                Thread.sleep(50);
+                            } catch (final InterruptedException ex) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return new RsWithStatus(RsStatus.OK);
+                        }
+                    )
+                );
+            }
+        );
+        final Upstream second = new Upstream(new SliceSimple(new RsWithStatus(RsStatus.OK)));
+        final HedgedSlice slice = new HedgedSlice(
+            Arrays.asList(first, second), 0.95, Duration.ofHours(1)
+        );
+        for (int idx = 0; idx < 5; idx += 1) {
+            slice.response(
+                new RequestLine(RqMethod.GET, "/any").toString(), Headers.EMPTY, Content.EMPTY
+            ).send((status, headers, body) -> CompletableFuture.allOf())
+                .toCompletableFuture().join();
+        }
+        MatcherAssert.assertThat(
+            "Slow upstream should be requested only once",
+            slow.get(),
+            new IsEqual<>(1)
+        );
+    }
+
+    @Test
+    void fastFailingUpstreamScoresWorseThanSlowHealthy() {
+        final Upstream failing = new Upstream(
+            new SliceSimple(new RsWithStatus(RsStatus.UNAVAILABLE))
+        );
+        final Upstream healthy = new Upstream(
+            (line, headers, pub) -> new AsyncResponse(
+                CompletableFuture.supplyAsync(
+                    () -> {
+                        try {
+                            Thread.sleep(50);
+                        } catch (final InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return new RsWithStatus(RsStatus.OK);
+                    }
+                )
+            )
+        );
+        for (final Upstream upstream : Arrays.asList(failing, healthy)) {
+            upstream.response(
+                new RequestLine(RqMethod.GET, "/any").toString(), Headers.EMPTY, Content.EMPTY
+            ).send((status, headers, body) -> CompletableFuture.allOf())
+                .toCompletableFuture().join();
+        }
+        MatcherAssert.assertThat(
+            "Failed calls should not be sampled as latency",
+            failing.percentile(0.5).isPresent(),
+            new IsEqual<>(false)
+        );
+        MatcherAssert.assertThat(
+            "Failing upstream should score worse",
+            failing.score() > healthy.score(),
+            new IsEqual<>(true)
+        );
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import io.reactivex.Flowable;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link KeyFilterStorage} and {@link CuckooFilter}.
+ *
+ * @since 0.8
+ */
+final class KeyFilterStorageTest {
+
+    /**
+     * Origin storage.
+     */
+    private Storage storage;
+
+    @BeforeEach
+    void init() {
+        this.storage = new InMemoryStorage();
+    }
+
+    @Test
+    void answersMissingKeysWithoutStorage() {
+        this.storage.save(new Key.From("lib", "a.jar"), new Content.From(new byte[1])).join();
+        final KeyFilterStorage filtered = new KeyFilterStorage(this.storage, 1024);
+        filtered.start().toCompletableFuture().join();
+        final FilesSlice slice = new FilesSlice(filtered);
+        MatcherAssert.assertThat(
+            "Missing key should be not found",
+            slice.response(
+                new RequestLine(RqMethod.GET, "/lib/b.jar").toString(),
+                Headers.EMPTY, Flowable.empty()
+            ),
+            new RsHasStatus(RsStatus.NOT_FOUND)
+        );
+        MatcherAssert.assertThat(
+            "Existing key should be found",
+            slice.response(
+                new RequestLine(RqMethod.GET, "/lib/a.jar").toString(),
+                Headers.EMPTY, Flowable.empty()
+            ),
+            new RsHasStatus(RsStatus.OK)
+        );
+        MatcherAssert.assertThat(
+            "Missing key lookup should not reach storage", filtered.skipped(),
+            new IsEqual<>(1L)
+        );
+    }
+
+    @Test
+    void followsSavesAndDeletes() {
+        final KeyFilterStorage filtered = new KeyFilterStorage(this.storage, 1024);
+        filtered.start().toCompletableFuture().join();
+        final Key key = new Key.From("new.txt");
+        filtered.save(key, new Content.From("new".getBytes())).join();
+        MatcherAssert.assertThat(
+            "Saved key should exist", filtered.exists(key).join(), new IsEqual<>(true)
+        );
+        filtered.delete(key).join();
+        MatcherAssert.assertThat(
+            "Deleted key should be absent", filtered.exists(key).join(), new IsEqual<>(false)
+        );
+        MatcherAssert.assertThat(
+            "Deleted key lookup should not reach storage", filtered.skipped(),
+            new IsEqual<>(1L)
+        );
+    }
+
+    @Test
+    void restartsFromSnapshotUnlessDirty() {
+        final Key key = new Key.From("one.txt");
+        final KeyFilterStorage first = new KeyFilterStorage(this.storage, 1024);
+        first.start().toCompletableFuture().join();
+        first.save(key, new Content.From(new byte[1])).join();
+        first.snapshot().toCompletableFuture().join();
+        final Key bypass = new Key.From("bypass.txt");
+        this.storage.save(bypass, new Content.From(new byte[1])).join();
+        final KeyFilterStorage second = new KeyFilterStorage(this.storage, 1024);
+        second.start().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Filter should be restored from snapshot without listing",
+            second.exists(key).join() && !second.exists(bypass).join(),
+            new IsEqual<>(true)
+        );
+        second.delete(key).join();
+        final KeyFilterStorage third = new KeyFilterStorage(this.storage, 1024);
+        third.start().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Filter should be rebuilt after change since snapshot",
+            third.exists(bypass).join() && !third.exists(key).join(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void doesNotOverflowOnOverwrites() {
+        final KeyFilterStorage filtered = new KeyFilterStorage(this.storage, 1);
+        filtered.start().toCompletableFuture().join();
+        final Key key = new Key.From("overwritten.txt");
+        for (int idx = 0; idx < 20; idx += 1) {
+            filtered.save(key, new Content.From(new byte[] {(byte) idx})).join();
+        }
+        filtered.delete(key).join();
+        MatcherAssert.assertThat(
+            "Deleted key should be absent", filtered.exists(key).join(), new IsEqual<>(false)
+        );
+        MatcherAssert.assertThat(
+            "Deleted key lookup should not reach storage", filtered.skipped(),
+            new IsEqual<>(1L)
+        );
+    }
+
+    @Test
+    void rebuildsOverflowedFilter() throws Exception {
+        final KeyFilterStorage filtered = new KeyFilterStorage(this.storage, 1);
+        filtered.start().toCompletableFuture().join();
+        for (int idx = 0; idx < 100; idx += 1) {
+            filtered.save(
+                new Key.From(String.format("key-%d", idx)), new Content.From(new byte[1])
+            ).join();
+        }
+        final Key missing = new Key.From("missing.txt");
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (filtered.exists(missing).join() || filtered.skipped() == 0) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Filter was not rebuilt in time");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        MatcherAssert.assertThat(
+            "Saved keys should be found in rebuilt filter",
+            filtered.exists(new Key.From("key-42")).join(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void cuckooFilterHasNoFalseNegatives() {
+        final int count = 10_000;
+        final CuckooFilter filter = new CuckooFilter(count);
+        for (int idx = 0; idx < count; idx += 1) {
+            filter.add(String.format("key-%d", idx));
+        }
+        for (int idx = 0; idx < count; idx += 2) {
+            filter.remove(String.format("key-%d", idx));
+        }
+        final CuckooFilter restored = CuckooFilter.restore(filter.snapshot());
+        int missed = 0;
+        int positives = 0;
+        for (int idx = 0; idx < count; idx += 1) {
+            if (idx % 2 == 1 && !restored.mightContain(String.format("key-%d", idx))) {
+                missed += 1;
+            }
+            if (restored.mightContain(String.format("other-%d", idx))) {
+                positives += 1;
+            }
+        }
+        MatcherAssert.assertThat("Added key should be found", missed, new IsEqual<>(0));
+        MatcherAssert.assertThat(
+            "False positives should be rare", positives < count / 100, new IsEqual<>(true)
+        );
+    }
+}
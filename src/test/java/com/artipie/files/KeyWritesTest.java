@@ -0,0 +1,205 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.blocking.BlockingStorage;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link KeyWrites}.
+ *
+ * @since 0.8
+ */
+final class KeyWritesTest {
+
+    /**
+     * Test storage.
+     */
+    private Storage storage;
+
+    @BeforeEach
+    void init() {
+        this.storage = new InMemoryStorage();
+    }
+
+    @Test
+    void lastStartedWriteWins() {
+        final KeyWrites writes = new KeyWrites();
+        final Key key = new Key.From("file.txt");
+        final CompletableFuture<String> slow = new CompletableFuture<>();
+        final CompletionStage<Boolean> first = writes.write(
+            key, () -> slow, this::publish
+        );
+        final CompletionStage<Boolean> second = writes.write(
+            key, () -> CompletableFuture.completedFuture("second"), this::publish
+        );
+        MatcherAssert.assertThat(
+            "Second write should be published",
+            second.toCompletableFuture().join(),
+            new IsEqual<>(true)
+        );
+        slow.complete("first");
+        MatcherAssert.assertThat(
+            "First write should be superseded",
+            first.toCompletableFuture().join(),
+            new IsEqual<>(false)
+        );
+        MatcherAssert.assertThat(
+            "Content of the second write should be kept",
+            new String(new BlockingStorage(this.storage).value(key)),
+            new IsEqual<>("second")
+        );
+        MatcherAssert.assertThat(
+            "Superseded write should be counted",
+            writes.superseded(),
+            new IsEqual<>(1L)
+        );
+        MatcherAssert.assertThat(
+            "Key state should be removed",
+            writes.active(),
+            new IsEqual<>(0)
+        );
+    }
+
+    @Test
+    void serializesPublicationsOfSameKey() {
+        final KeyWrites writes = new KeyWrites();
+        final Key key = new Key.From("lock.txt");
+        final CompletableFuture<Boolean> held = new CompletableFuture<>();
+        final CompletionStage<Boolean> first = writes.write(
+            key, () -> CompletableFuture.completedFuture(key), (staged, newer) -> held
+        );
+        final CompletionStage<Boolean> second = writes.write(
+            key, () -> CompletableFuture.completedFuture(key),
+            (staged, newer) -> CompletableFuture.completedFuture(newer)
+        );
+        MatcherAssert.assertThat(
+            "Second publication should wait for the first one",
+            second.toCompletableFuture().isDone(),
+            new IsEqual<>(false)
+        );
+        held.complete(true);
+        MatcherAssert.assertThat(
+            "Second publication should complete after the first one",
+            first.toCompletableFuture().join() && second.toCompletableFuture().join(),
+            new IsEqual<>(true)
+        );
+        MatcherAssert.assertThat(
+            "Contention should be counted",
+            writes.contended(),
+            new IsEqual<>(1L)
+        );
+    }
+
+    @Test
+    void fillsYieldToWrites() {
+        final KeyWrites writes = new KeyWrites();
+        final Key key = new Key.From("filled.txt");
+        final CompletableFuture<String> slow = new CompletableFuture<>();
+        final CompletionStage<Boolean> write = writes.write(key, () -> slow, this::publish);
+        MatcherAssert.assertThat(
+            "Fill should be skipped while write is in progress",
+            writes.fill(key, () -> this.publish("fill", true)).toCompletableFuture().join(),
+            new IsEqual<>(false)
+        );
+        slow.complete("write");
+        MatcherAssert.assertThat(
+            "Write should not be superseded by fill",
+            write.toCompletableFuture().join(),
+            new IsEqual<>(true)
+        );
+        MatcherAssert.assertThat(
+            "Fill should run when no write is in progress",
+            writes.fill(key, () -> this.publish("fill", true)).toCompletableFuture().join(),
+            new IsEqual<>(true)
+        );
+        MatcherAssert.assertThat(
+            "Key state should be removed", writes.active(), new IsEqual<>(0)
+        );
+    }
+
+    @Test
+    void deletesAndUploadsThroughFilesSlice() {
+        final FilesSlice slice = new FilesSlice(this.storage);
+        MatcherAssert.assertThat(
+            "Upload should be created",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED),
+                new RequestLine(RqMethod.PUT, "/dir/some.txt"),
+                Headers.EMPTY,
+                new Content.From("data".getBytes())
+            )
+        );
+        MatcherAssert.assertThat(
+            "Delete should succeed",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NO_CONTENT),
+                new RequestLine(RqMethod.DELETE, "/dir/some.txt")
+            )
+        );
+        MatcherAssert.assertThat(
+            "Second delete should not find the key",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NOT_FOUND),
+                new RequestLine(RqMethod.DELETE, "/dir/some.txt")
+            )
+        );
+    }
+
+    /**
+     * Publish staged value.
+     * @param value Staged value
+     * @param newer Whether write is newer
+     * @return Whether value was published
+     */
+    private CompletionStage<Boolean> publish(final String value, final boolean newer) {
+        final CompletionStage<Boolean> res;
+        if (newer) {
+            res = this.storage.save(
+                new Key.From("file.txt"), new Content.From(value.getBytes())
+            ).thenApply(nothing -> true);
+        } else {
+            res = CompletableFuture.completedFuture(false);
+        }
+        return res;
+    }
+}
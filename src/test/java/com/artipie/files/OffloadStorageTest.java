@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.ext.PublisherAs;
+import com.artipie.asto.memory.InMemoryStorage;
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsInstanceOf;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link OffloadStorage}.
+ *
+ * @since 0.8
+ */
+final class OffloadStorageTest {
+
+    @Test
+    void runsOperationsOnExecutor() {
+        final Key key = new Key.From("blocking.txt");
+        final AtomicInteger tasks = new AtomicInteger();
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        final OffloadStorage storage = new OffloadStorage(
+            new InMemoryStorage(),
+            task -> {
+                tasks.incrementAndGet();
+                pool.execute(task);
+            }
+        );
+        storage.save(key, new Content.From("data".getBytes())).join();
+        MatcherAssert.assertThat(
+            "Content should be read",
+            new PublisherAs(storage.value(key).join()).asciiString()
+                .toCompletableFuture().join(),
+            new IsEqual<>("data")
+        );
+        pool.shutdown();
+        MatcherAssert.assertThat(
+            "Save, value and content subscription should run on executor",
+            tasks.get(),
+            Matchers.greaterThanOrEqualTo(3)
+        );
+        MatcherAssert.assertThat(
+            "Blocking time should be measured",
+            storage.blocked(),
+            Matchers.greaterThan(0L)
+        );
+    }
+
+    @Test
+    void failsRejectedOperations() {
+        final OffloadStorage storage = new OffloadStorage(
+            new InMemoryStorage(),
+            (Executor) task -> {
+                throw new RejectedExecutionException("Queue is full");
+            }
+        );
+        final CompletionException err = Assertions.assertThrows(
+            CompletionException.class,
+            () -> storage.exists(new Key.From("any")).join()
+        );
+        MatcherAssert.assertThat(
+            "Operation should be rejected",
+            err.getCause(),
+            new IsInstanceOf(RejectedExecutionException.class)
+        );
+        MatcherAssert.assertThat(
+            "Rejected operation should not be queued",
+            storage.queued(),
+            new IsEqual<>(0)
+        );
+    }
+
+    @Test
+    void failsContentOfRejectedSubscription() throws Exception {
+        final Key key = new Key.From("rejected.txt");
+        final InMemoryStorage origin = new InMemoryStorage();
+        origin.save(key, new Content.From("data".getBytes())).join();
+        final AtomicInteger tasks = new AtomicInteger();
+        final OffloadStorage storage = new OffloadStorage(
+            origin,
+            (Executor) task -> {
+                if (tasks.incrementAndGet() > 1) {
+                    throw new RejectedExecutionException("Queue is full");
+                }
+                task.run();
+            }
+        );
+        final CompletableFuture<byte[]> bytes = new PublisherAs(storage.value(key).join())
+            .bytes().toCompletableFuture();
+        final ExecutionException err = Assertions.assertThrows(
+            ExecutionException.class,
+            () -> bytes.get(5, TimeUnit.SECONDS)
+        );
+        MatcherAssert.assertThat(
+            "Content should fail with rejection",
+            err.getCause(),
+            new IsInstanceOf(RejectedExecutionException.class)
+        );
+    }
+
+    @Test
+    void preservesBackpressureOfContent() throws Exception {
+        final AtomicLong requested = new AtomicLong();
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        final OffloadStorage storage = new OffloadStorage(
+            new Chunked(
+                new InMemoryStorage(),
+                Flowable.range(0, 1000)
+                    .map(idx -> ByteBuffer.wrap(new byte[] {idx.byteValue()}))
+                    .doOnRequest(requested::addAndGet)
+            ),
+            pool
+        );
+        final TestSubscriber<ByteBuffer> sub = Flowable.fromPublisher(
+            storage.value(new Key.From("chunked.bin")).join()
+        ).test(0);
+        sub.request(3);
+        sub.awaitCount(3);
+        TimeUnit.MILLISECONDS.sleep(100);
+        pool.shutdown();
+        MatcherAssert.assertThat(
+            "Only requested chunks should be emitted",
+            sub.valueCount(),
+            new IsEqual<>(3)
+        );
+        MatcherAssert.assertThat(
+            "Only requested chunks should be requested from origin",
+            requested.get(),
+            new IsEqual<>(3L)
+        );
+    }
+
+    /**
+     * Storage with chunked content of every key.
+     * @since 0.8
+     */
+    private static final class Chunked implements Storage {
+
+        /**
+         * Origin storage.
+         */
+        private final Storage origin;
+
+        /**
+         * Content chunks.
+         */
+        private final Flowable<ByteBuffer> chunks;
+
+        /**
+         * Ctor.
+         * @param origin Origin storage
+         * @param chunks Content chunks
+         */
+        Chunked(final Storage origin, final Flowable<ByteBuffer> chunks) {
+            this.origin = origin;
+            this.chunks = chunks;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> exists(final Key key) {
+            return this.origin.exists(key);
+        }
+
+        @Override
+        public CompletableFuture<Collection<Key>> list(final Key prefix) {
+            return this.origin.list(prefix);
+        }
+
+        @Override
+        public CompletableFuture<Void> save(final Key key, final Content content) {
+            return this.origin.save(key, content);
+        }
+
+        @Override
+        public CompletableFuture<Void> move(final Key source, final Key destination) {
+            return this.origin.move(source, destination);
+        }
+
+        @Override
+        public CompletableFuture<Long> size(final Key key) {
+            return this.origin.size(key);
+        }
+
+        @Override
+        public CompletableFuture<Content> value(final Key key) {
+            return CompletableFuture.completedFuture(new Content.From(this.chunks));
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(final Key key) {
+            return this.origin.delete(key);
+        }
+
+        @Override
+        public <T> CompletionStage<T> exclusively(final Key key,
+            final Function<Storage, CompletionStage<T>> operation) {
+            return this.origin.exclusively(key, operation);
+        }
+    }
+}
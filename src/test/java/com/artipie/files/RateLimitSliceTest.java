@@ -0,0 +1,155 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.http.Headers;
+import com.artipie.http.headers.Authorization;
+import com.artipie.http.hm.RsHasBody;
+import com.artipie.http.hm.RsHasHeaders;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsFull;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import io.reactivex.Flowable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.cactoos.map.MapEntry;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link RateLimitSlice}.
+ *
+ * @since 0.8
+ */
+final class RateLimitSliceTest {
+
+    @Test
+    void rejectsRequestsOverLimit() {
+        final RateLimitSlice slice = new RateLimitSlice(
+            (line, headers, body) -> new RsWithStatus(RsStatus.OK),
+            new RateLimits(1, 1, 0, 0)
+        );
+        final Headers alice = new Headers.From(new Authorization.Basic("alice", "pwd"));
+        MatcherAssert.assertThat(
+            "First request should be allowed",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.OK),
+                new RequestLine(RqMethod.GET, "/file"), alice, Content.EMPTY
+            )
+        );
+        MatcherAssert.assertThat(
+            "Second request should be rejected",
+            slice,
+            new SliceHasResponse(
+                Matchers.allOf(
+                    new RsHasStatus(RsStatus.TOO_MANY_REQUESTS),
+                    new RsHasHeaders(new MapEntry<>("Retry-After", "1"))
+                ),
+                new RequestLine(RqMethod.GET, "/file"), alice, Content.EMPTY
+            )
+        );
+        MatcherAssert.assertThat(
+            "Other user should be allowed",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.OK),
+                new RequestLine(RqMethod.GET, "/file"),
+                new Headers.From(new Authorization.Basic("bob", "pwd")), Content.EMPTY
+            )
+        );
+    }
+
+    @Test
+    void pacesResponseBody() {
+        final byte[] chunk = new byte[100];
+        final long start = System.nanoTime();
+        MatcherAssert.assertThat(
+            "Body should be sent completely",
+            new RateLimitSlice(
+                (line, headers, body) -> new RsFull(
+                    RsStatus.OK, Headers.EMPTY,
+                    new Content.From(
+                        Flowable.range(0, 3).map(idx -> ByteBuffer.wrap(chunk))
+                    )
+                ),
+                new RateLimits(0, 0, 1000, 100)
+            ),
+            new SliceHasResponse(
+                new RsHasBody(new byte[chunk.length * 3]),
+                new RequestLine(RqMethod.GET, "/big")
+            )
+        );
+        MatcherAssert.assertThat(
+            "Body should be paced to bandwidth",
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            Matchers.greaterThanOrEqualTo(150L)
+        );
+    }
+
+    @Test
+    void trustsForwardedAddressOnlyFromProxies() {
+        final RateLimits untrusted = new RateLimits(1, 1, 0, 0);
+        final RateLimits trusted = new RateLimits(1, 1, 0, 0, 1);
+        MatcherAssert.assertThat(
+            "Forged addresses should be the same anonymous client",
+            untrusted.client(new Headers.From("X-Forwarded-For", "10.0.0.1")),
+            new IsEqual<>(untrusted.client(new Headers.From("X-Forwarded-For", "10.0.0.2")))
+        );
+        MatcherAssert.assertThat(
+            "Address appended by trusted proxy should be used",
+            trusted.client(new Headers.From("X-Forwarded-For", "10.0.0.1, 192.168.1.7")),
+            new IsEqual<>("addr:192.168.1.7")
+        );
+    }
+
+    @Test
+    void boundsClientsCount() {
+        final RateLimits limits = new RateLimits(1, 1, 0, 0, 1);
+        for (int idx = 0; idx < 10_100; idx += 1) {
+            limits.request(String.format("addr:%d", idx));
+        }
+        MatcherAssert.assertThat(
+            "Clients map should be bounded",
+            limits.clients(),
+            Matchers.lessThanOrEqualTo(10_000)
+        );
+    }
+
+    @Test
+    void rejectsZeroBurst() {
+        Assertions.assertThrows(
+            IllegalArgumentException.class,
+            () -> new RateLimits(1, 0, 0, 0)
+        );
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.blocking.BlockingStorage;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link Replication} and {@link ReplicatingSlice}.
+ *
+ * @since 0.8
+ */
+final class ReplicationTest {
+
+    /**
+     * Primary storage.
+     */
+    private Storage primary;
+
+    /**
+     * Secondary storage.
+     */
+    private Storage secondary;
+
+    @BeforeEach
+    void init() {
+        this.primary = new InMemoryStorage();
+        this.secondary = new InMemoryStorage();
+    }
+
+    @Test
+    void replicatesUploadsAndDeletes() throws Exception {
+        final Replication replication = new Replication(this.primary, this.secondary);
+        final ReplicatingSlice slice = new ReplicatingSlice(
+            new FilesSlice(this.primary), replication
+        );
+        final Key key = new Key.From("repo", "file.bin");
+        MatcherAssert.assertThat(
+            "Upload should be acknowledged",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED),
+                new RequestLine(RqMethod.PUT, "/repo/file.bin"),
+                Headers.EMPTY, new Content.From("data".getBytes())
+            )
+        );
+        ReplicationTest.await(() -> this.secondary.exists(key).join());
+        MatcherAssert.assertThat(
+            "Content should be replicated",
+            new String(new BlockingStorage(this.secondary).value(key)),
+            new IsEqual<>("data")
+        );
+        MatcherAssert.assertThat(
+            "Delete should be acknowledged",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NO_CONTENT),
+                new RequestLine(RqMethod.DELETE, "/repo/file.bin")
+            )
+        );
+        ReplicationTest.await(() -> !this.secondary.exists(key).join());
+        ReplicationTest.await(() -> replication.pending() == 0);
+        MatcherAssert.assertThat(
+            "Queue should be empty",
+            this.primary.list(Replication.ROOT).join().isEmpty(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void recoversPersistedQueue() throws Exception {
+        final Key key = new Key.From("restored.txt");
+        this.primary.save(key, new Content.From("restored".getBytes())).join();
+        this.primary.save(
+            new Key.From(Replication.ROOT, "0000001600000000000-test"),
+            new Content.From(key.string().getBytes())
+        ).join();
+        final Replication replication = new Replication(this.primary, this.secondary);
+        replication.recover().toCompletableFuture().join();
+        ReplicationTest.await(() -> this.secondary.exists(key).join());
+        ReplicationTest.await(() -> replication.pending() == 0);
+        MatcherAssert.assertThat(replication.replicated(), new IsEqual<>(1L));
+    }
+
+    @Test
+    void recoversOnlyOnce() throws Exception {
+        final Key key = new Key.From("once.txt");
+        this.primary.save(key, new Content.From("once".getBytes())).join();
+        this.primary.save(
+            new Key.From(Replication.ROOT, "0000001600000000000-once"),
+            new Content.From(key.string().getBytes())
+        ).join();
+        final Replication replication = new Replication(
+            this.primary, new Replication.StorageTarget(this.secondary), Replication.ROOT,
+            100, 4, 5, 1000
+        );
+        replication.changed(key);
+        replication.recover().toCompletableFuture().join();
+        replication.recover().toCompletableFuture().join();
+        ReplicationTest.await(() -> replication.pending() == 0);
+        MatcherAssert.assertThat(replication.replicated(), new IsEqual<>(2L));
+    }
+
+    @Test
+    void failsAttemptsOfHungTarget() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final Replication replication = new Replication(
+            this.primary,
+            new Replication.Target() {
+                @Override
+                public CompletableFuture<Void> save(final Key key, final Content content) {
+                    calls.incrementAndGet();
+                    return new CompletableFuture<>();
+                }
+
+                @Override
+                public CompletableFuture<Void> remove(final Key key) {
+                    calls.incrementAndGet();
+                    return new CompletableFuture<>();
+                }
+            },
+            Replication.ROOT, 100, 4, 2, 10, 50
+        );
+        final Key key = new Key.From("hung.txt");
+        this.primary.save(key, new Content.From("hung".getBytes())).join();
+        replication.changed(key);
+        ReplicationTest.await(() -> replication.failed() == 1L);
+        MatcherAssert.assertThat(
+            "Key should be attempted until failed",
+            calls.get(),
+            Matchers.greaterThanOrEqualTo(2)
+        );
+        MatcherAssert.assertThat(
+            "Failed key should stay pending",
+            replication.pending(key),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void countsLagOfRetriedChanges() throws Exception {
+        final Replication replication = new Replication(
+            this.primary,
+            new Replication.Target() {
+                @Override
+                public CompletableFuture<Void> save(final Key key, final Content content) {
+                    final CompletableFuture<Void> res = new CompletableFuture<>();
+                    res.completeExceptionally(new IllegalStateException("Target is down"));
+                    return res;
+                }
+
+                @Override
+                public CompletableFuture<Void> remove(final Key key) {
+                    return this.save(key, Content.EMPTY);
+                }
+            },
+            Replication.ROOT, 100, 4, 3, 10
+        );
+        final Key key = new Key.From("lagging.txt");
+        this.primary.save(key, new Content.From("lagging".getBytes())).join();
+        replication.changed(key);
+        ReplicationTest.await(() -> replication.failed() == 1L);
+        TimeUnit.MILLISECONDS.sleep(100);
+        MatcherAssert.assertThat(
+            "Lag should grow while target is down",
+            replication.lag(),
+            Matchers.greaterThanOrEqualTo(100L)
+        );
+    }
+
+    @Test
+    void replicatesAgainAfterAbandonedWrite() throws Exception {
+        final CompletableFuture<Void> hung = new CompletableFuture<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final Replication.Target target = new Replication.StorageTarget(this.secondary);
+        final Replication replication = new Replication(
+            this.primary,
+            new Replication.Target() {
+                @Override
+                public CompletableFuture<Void> save(final Key key, final Content content) {
+                    final CompletableFuture<Void> res;
+                    if (calls.incrementAndGet() == 1) {
+                        res = hung;
+                    } else {
+                        res = target.save(key, content);
+                    }
+                    return res;
+                }
+
+                @Override
+                public CompletableFuture<Void> remove(final Key key) {
+                    return target.remove(key);
+                }
+            },
+            Replication.ROOT, 100, 4, 5, 10, 50
+        );
+        final Key key = new Key.From("abandoned.txt");
+        this.primary.save(key, new Content.From("current".getBytes())).join();
+        replication.changed(key);
+        ReplicationTest.await(() -> replication.replicated() == 1L);
+        this.secondary.save(key, new Content.From("stale".getBytes())).join();
+        hung.complete(null);
+        ReplicationTest.await(
+            () -> "current".equals(new String(new BlockingStorage(this.secondary).value(key)))
+        );
+        ReplicationTest.await(() -> replication.pending() == 0);
+        MatcherAssert.assertThat(
+            "Abandoned write should be followed by another replication",
+            calls.get(),
+            new IsEqual<>(3)
+        );
+    }
+
+    /**
+     * Wait for condition.
+     * @param condition Condition
+     * @throws InterruptedException If interrupted
+     */
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Condition was not met in time");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
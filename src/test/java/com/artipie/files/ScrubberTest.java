@@ -0,0 +1,172 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.memory.InMemoryStorage;
+import java.time.Duration;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link Scrubber} and {@link DigestStorage}.
+ *
+ * @since 0.8
+ */
+final class ScrubberTest {
+
+    /**
+     * Storage.
+     */
+    private Storage storage;
+
+    @BeforeEach
+    void init() {
+        this.storage = new InMemoryStorage();
+    }
+
+    @Test
+    void quarantinesCorruptedContent() {
+        final Key good = new Key.From("lib", "good.jar");
+        final Key bad = new Key.From("lib", "bad.jar");
+        final Storage digests = new DigestStorage(this.storage);
+        digests.save(good, new Content.From("good content".getBytes())).join();
+        digests.save(bad, new Content.From("full content".getBytes())).join();
+        this.storage.save(bad, new Content.From("truncated".getBytes())).join();
+        final Scrubber scrubber = new Scrubber(
+            this.storage, Scrubber.Action.QUARANTINE, 0, 2
+        );
+        scrubber.scrub().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Good key should be verified", scrubber.verified(), new IsEqual<>(1L)
+        );
+        MatcherAssert.assertThat(
+            "Bad key should be found", scrubber.corrupted(), new IsEqual<>(1L)
+        );
+        MatcherAssert.assertThat(
+            "Bad key should be moved to quarantine",
+            this.storage.exists(new Key.From(Scrubber.QUARANTINE, bad.string())).join()
+                && !this.storage.exists(bad).join(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void evictsCorruptedContent() {
+        final Key key = new Key.From("cached.bin");
+        new DigestStorage(this.storage)
+            .save(key, new Content.From(new byte[] {1, 2, 3})).join();
+        this.storage.save(key, new Content.From(new byte[] {1, 2})).join();
+        new Scrubber(this.storage, Scrubber.Action.EVICT, 1024, 1)
+            .scrub().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Bad key should be evicted",
+            this.storage.exists(key).join(),
+            new IsEqual<>(false)
+        );
+        MatcherAssert.assertThat(
+            "Checksum record should be removed",
+            this.storage.list(Checksums.ROOT).join().isEmpty(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void resumesFromCheckpoint() {
+        for (final String name : new String[] {"a", "b", "c"}) {
+            this.storage.save(new Key.From(name), new Content.From(name.getBytes())).join();
+        }
+        this.storage.save(Scrubber.CHECKPOINT, new Content.From("b".getBytes())).join();
+        final Scrubber scrubber = new Scrubber(this.storage, Scrubber.Action.EVICT, 0, 4);
+        scrubber.scrub().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Only keys after checkpoint should be scrubbed",
+            scrubber.adopted(),
+            new IsEqual<>(1L)
+        );
+        MatcherAssert.assertThat(
+            "Checkpoint should be removed after pass",
+            this.storage.exists(Scrubber.CHECKPOINT).join(),
+            new IsEqual<>(false)
+        );
+    }
+
+    @Test
+    void adoptsUnknownKeysAndQuarantinesAbortedWrites() {
+        final Key aborted = new Key.From("aborted.bin");
+        final Key unknown = new Key.From("unknown.bin");
+        final Key complete = new Key.From("complete.bin");
+        new Checksums(this.storage).begin(aborted).join();
+        this.storage.save(aborted, new Content.From(new byte[] {1})).join();
+        this.storage.save(unknown, new Content.From(new byte[] {2})).join();
+        new DigestStorage(this.storage)
+            .save(complete, new Content.From(new byte[] {3})).join();
+        final Scrubber scrubber = new Scrubber(
+            this.storage, Scrubber.Action.QUARANTINE, 0, 4, Duration.ZERO
+        );
+        scrubber.scrub().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Aborted write should be counted", scrubber.orphaned(), new IsEqual<>(1L)
+        );
+        MatcherAssert.assertThat(
+            "Aborted write should be moved to quarantine",
+            this.storage.exists(new Key.From(Scrubber.QUARANTINE, aborted.string())).join()
+                && !this.storage.exists(aborted).join(),
+            new IsEqual<>(true)
+        );
+        MatcherAssert.assertThat(
+            "Unknown key should be adopted in place",
+            scrubber.adopted() == 1L && this.storage.exists(unknown).join(),
+            new IsEqual<>(true)
+        );
+        scrubber.scrub().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Pending marker should be removed",
+            this.storage.list(Checksums.PENDING).join().isEmpty(),
+            new IsEqual<>(true)
+        );
+        MatcherAssert.assertThat(
+            "Complete and adopted keys should be verified on next pass",
+            scrubber.verified(), new IsEqual<>(3L)
+        );
+    }
+
+    @Test
+    void skipsWritesInProgress() {
+        final Key key = new Key.From("writing.bin");
+        new Checksums(this.storage).begin(key).join();
+        this.storage.save(key, new Content.From(new byte[] {1})).join();
+        final Scrubber scrubber = new Scrubber(this.storage, Scrubber.Action.EVICT, 0, 1);
+        scrubber.scrub().toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Key being written should stay in place",
+            this.storage.exists(key).join() && scrubber.orphaned() == 0L,
+            new IsEqual<>(true)
+        );
+    }
+}
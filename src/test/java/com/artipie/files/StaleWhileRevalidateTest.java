@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.blocking.BlockingStorage;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.hm.RsHasBody;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsFull;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link StaleWhileRevalidate} in {@link FileProxySlice}.
+ *
+ * @since 0.8
+ * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+final class StaleWhileRevalidateTest {
+
+    /**
+     * Test storage.
+     */
+    private Storage storage;
+
+    @BeforeEach
+    void init() {
+        this.storage = new InMemoryStorage();
+    }
+
+    @Test
+    void servesFreshContentWithoutRemote() {
+        final byte[] body = "index".getBytes();
+        final AtomicInteger calls = new AtomicInteger();
+        final StaleWhileRevalidate stale = new StaleWhileRevalidate(
+            this.storage, Duration.ofHours(1), Duration.ofHours(1), Duration.ZERO
+        );
+        final FileProxySlice slice = new FileProxySlice(
+            (line, headers, pub) -> {
+                calls.incrementAndGet();
+                return new RsFull(RsStatus.OK, Headers.EMPTY, new Content.From(body));
+            },
+            stale
+        );
+        for (int idx = 0; idx < 3; idx += 1) {
+            MatcherAssert.assertThat(
+                slice,
+                new SliceHasResponse(
+                    Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(body)),
+                    new RequestLine(RqMethod.GET, "/index")
+                )
+            );
+        }
+        MatcherAssert.assertThat(calls.get(), new IsEqual<>(1));
+    }
+
+    @Test
+    void servesStaleContentAndRefreshesIt() {
+        final Key key = new Key.From("meta");
+        this.storage.save(key, new Content.From("old".getBytes())).join();
+        final byte[] body = "new".getBytes();
+        MatcherAssert.assertThat(
+            "Stale content should be served",
+            new FileProxySlice(
+                (line, headers, pub) -> new RsFull(
+                    RsStatus.OK, Headers.EMPTY, new Content.From(body)
+                ),
+                new StaleWhileRevalidate(
+                    this.storage, Duration.ZERO, Duration.ofHours(1), Duration.ZERO
+                )
+            ),
+            new SliceHasResponse(
+                new RsHasBody("old".getBytes()),
+                new RequestLine(RqMethod.GET, "/meta")
+            )
+        );
+        MatcherAssert.assertThat(
+            "Content should be refreshed in cache",
+            new BlockingStorage(this.storage).value(key),
+            new IsEqual<>(body)
+        );
+    }
+
+    @Test
+    void doesNotServeStaleOnErrorAfterWindow() {
+        this.storage.save(new Key.From("old"), new Content.From("data".getBytes())).join();
+        MatcherAssert.assertThat(
+            new FileProxySlice(
+                (line, headers, pub) -> new RsWithStatus(RsStatus.INTERNAL_ERROR),
+                new StaleWhileRevalidate(
+                    this.storage, Duration.ZERO, Duration.ZERO, Duration.ZERO
+                )
+            ),
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NOT_FOUND),
+                new RequestLine(RqMethod.GET, "/old")
+            )
+        );
+    }
+
+    @Test
+    void servesStaleOnErrorWithinWindow() {
+        final byte[] body = "cached".getBytes();
+        this.storage.save(new Key.From("file"), new Content.From(body)).join();
+        MatcherAssert.assertThat(
+            new FileProxySlice(
+                (line, headers, pub) -> new RsWithStatus(RsStatus.INTERNAL_ERROR),
+                new StaleWhileRevalidate(
+                    this.storage, Duration.ZERO, Duration.ZERO, Duration.ofHours(1)
+                )
+            ),
+            new SliceHasResponse(
+                Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(body)),
+                new RequestLine(RqMethod.GET, "/file")
+            )
+        );
+    }
+
+    @Test
+    void sweepsExpiredFetchTimes() throws Exception {
+        final StaleWhileRevalidate swr = new StaleWhileRevalidate(
+            this.storage, Duration.ofMillis(1), Duration.ofMillis(1), Duration.ofMillis(1)
+        );
+        for (int idx = 0; idx < 100; idx += 1) {
+            swr.fetched(new Key.From(String.format("old-%d", idx)));
+        }
+        Thread.sleep(10);
+        swr.fetched(new Key.From("new"));
+        MatcherAssert.assertThat(
+            "Only recently fetched key should be tracked", swr.tracked(), new IsEqual<>(1)
+        );
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.blocking.BlockingStorage;
+import com.artipie.asto.ext.PublisherAs;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.Slice;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rq.RqParams;
+import com.artipie.http.rs.RsStatus;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for resumable uploads of {@link FilesSlice}.
+ *
+ * @since 0.8
+ * @checkstyle ClassDataAbstractionCouplingCheck (500 lines)
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+final class UploadsSliceTest {
+
+    /**
+     * Test storage.
+     */
+    private Storage storage;
+
+    /**
+     * Files slice.
+     */
+    private Slice slice;
+
+    @BeforeEach
+    void init() {
+        this.storage = new InMemoryStorage();
+        this.slice = new FilesSlice(this.storage);
+    }
+
+    @Test
+    void uploadsFileInPartsOutOfOrder() {
+        final String location = this.start("/big/file.bin");
+        this.send(RqMethod.PUT, String.format("%s&offset=5", location), "world");
+        MatcherAssert.assertThat(
+            "Received ranges are listed",
+            this.send(RqMethod.GET, location, ""),
+            new IsEqual<>("5-9\n")
+        );
+        this.send(RqMethod.PUT, String.format("%s&offset=0", location), "hello");
+        MatcherAssert.assertThat(
+            "Adjacent ranges are merged",
+            this.send(RqMethod.GET, location, ""),
+            new IsEqual<>("0-9\n")
+        );
+        MatcherAssert.assertThat(
+            "Upload is committed",
+            this.slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED), new RequestLine(RqMethod.POST, location)
+            )
+        );
+        MatcherAssert.assertThat(
+            "File is assembled",
+            new BlockingStorage(this.storage).value(new Key.From("big", "file.bin")),
+            new IsEqual<>("helloworld".getBytes(StandardCharsets.UTF_8))
+        );
+        MatcherAssert.assertThat(
+            "Session data is removed",
+            this.storage.list(new Key.From(".uploads")).join().isEmpty(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void rejectsCommitWithGaps() {
+        final String location = this.start("/gaps.txt");
+        this.send(RqMethod.PUT, String.format("%s&offset=3", location), "abc");
+        MatcherAssert.assertThat(
+            this.slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CONFLICT), new RequestLine(RqMethod.POST, location)
+            )
+        );
+        MatcherAssert.assertThat(
+            this.storage.exists(new Key.From("gaps.txt")).join(),
+            new IsEqual<>(false)
+        );
+    }
+
+    @Test
+    void assemblesOverlappingParts() {
+        final String location = this.start("/overlap.txt");
+        this.send(RqMethod.PUT, String.format("%s&offset=0", location), "hello");
+        this.send(RqMethod.PUT, String.format("%s&offset=3", location), "lo world");
+        this.send(RqMethod.PUT, String.format("%s&offset=6", location), "wo");
+        MatcherAssert.assertThat(
+            "Overlapping ranges are merged",
+            this.send(RqMethod.GET, location, ""),
+            new IsEqual<>("0-10\n")
+        );
+        MatcherAssert.assertThat(
+            "Upload is committed",
+            this.slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED), new RequestLine(RqMethod.POST, location)
+            )
+        );
+        MatcherAssert.assertThat(
+            "File is assembled",
+            new BlockingStorage(this.storage).value(new Key.From("overlap.txt")),
+            new IsEqual<>("hello world".getBytes(StandardCharsets.UTF_8))
+        );
+    }
+
+    @Test
+    void doesNotServeSessionData() {
+        final String location = this.start("/secret.txt");
+        this.send(RqMethod.PUT, String.format("%s&offset=0", location), "secret");
+        final String id = new RqParams(URI.create(location)).value("upload").get();
+        for (final String path : new String[] {
+            String.format("/.uploads/%s/parts/%019d", id, 0),
+            String.format("/%%2Euploads/%s/meta", id),
+            String.format("/any/../.uploads/%s/meta", id),
+        }) {
+            MatcherAssert.assertThat(
+                path,
+                this.slice,
+                new SliceHasResponse(
+                    new RsHasStatus(RsStatus.NOT_FOUND), new RequestLine(RqMethod.GET, path)
+                )
+            );
+        }
+    }
+
+    @Test
+    void servesRegularDotKeys() {
+        this.storage.save(
+            new Key.From(".well-known", "security.txt"), new Content.From("contact".getBytes())
+        ).join();
+        MatcherAssert.assertThat(
+            this.slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.OK),
+                new RequestLine(RqMethod.GET, "/.well-known/security.txt")
+            )
+        );
+    }
+
+    @Test
+    void rejectsUnknownSession() {
+        MatcherAssert.assertThat(
+            this.slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NOT_FOUND),
+                new RequestLine(
+                    RqMethod.PUT, "/file.txt?upload=00000000-0000-0000-0000-000000000000&offset=0"
+                )
+            )
+        );
+    }
+
+    @Test
+    void cleansStaleSessions() {
+        final Uploads uploads = new Uploads(this.storage);
+        final String id = uploads.start(new Key.From("stale")).toCompletableFuture().join();
+        uploads.part(id, 0, new Content.From("data".getBytes()))
+            .toCompletableFuture().join();
+        uploads.clean(Duration.ofMillis(-1)).toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            this.storage.list(new Key.From(".uploads")).join().isEmpty(),
+            new IsEqual<>(true)
+        );
+    }
+
+    /**
+     * Start upload session.
+     * @param path File path
+     * @return Session location
+     */
+    private String start(final String path) {
+        final AtomicReference<String> location = new AtomicReference<>();
+        this.slice.response(
+            new RequestLine(RqMethod.POST, path).toString(), Headers.EMPTY, Content.EMPTY
+        ).send(
+            (status, headers, body) -> {
+                headers.forEach(
+                    header -> {
+                        if ("Location".equalsIgnoreCase(header.getKey())) {
+                            location.set(header.getValue());
+                        }
+                    }
+                );
+                return CompletableFuture.allOf();
+            }
+        ).toCompletableFuture().join();
+        MatcherAssert.assertThat(
+            "Session id is returned",
+            new RqParams(URI.create(location.get())).value("upload").isPresent(),
+            new IsEqual<>(true)
+        );
+        return location.get();
+    }
+
+    /**
+     * Send request.
+     * @param method Method
+     * @param uri Request URI
+     * @param body Request body
+     * @return Response body
+     */
+    private String send(final RqMethod method, final String uri, final String body) {
+        final AtomicReference<String> res = new AtomicReference<>();
+        this.slice.response(
+            new RequestLine(method, uri).toString(),
+            Headers.EMPTY,
+            new Content.From(body.getBytes(StandardCharsets.UTF_8))
+        ).send(
+            (status, headers, rsbody) -> new PublisherAs(rsbody)
+                .string(StandardCharsets.UTF_8)
+                .thenAccept(res::set)
+        ).toCompletableFuture().join();
+        return res.get();
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2020 artipie.com
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included
+ * in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NON-INFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.artipie.files;
+
+import com.artipie.asto.Content;
+import com.artipie.asto.Key;
+import com.artipie.asto.Storage;
+import com.artipie.asto.blocking.BlockingStorage;
+import com.artipie.asto.memory.InMemoryStorage;
+import com.artipie.http.Headers;
+import com.artipie.http.Response;
+import com.artipie.http.Slice;
+import com.artipie.http.async.AsyncResponse;
+import com.artipie.http.auth.Authentication;
+import com.artipie.http.auth.Permissions;
+import com.artipie.http.headers.Authorization;
+import com.artipie.http.hm.RsHasBody;
+import com.artipie.http.hm.RsHasStatus;
+import com.artipie.http.hm.SliceHasResponse;
+import com.artipie.http.rq.RequestLine;
+import com.artipie.http.rq.RequestLineFrom;
+import com.artipie.http.rq.RqMethod;
+import com.artipie.http.rs.RsStatus;
+import com.artipie.http.rs.RsWithStatus;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for {@link WriteBackSlice}.
+ *
+ * @since 0.8
+ */
+final class WriteBackSliceTest {
+
+    /**
+     * Cache storage.
+     */
+    private Storage cache;
+
+    /**
+     * Remote storage.
+     */
+    private Storage upstream;
+
+    @BeforeEach
+    void init() {
+        this.cache = new InMemoryStorage();
+        this.upstream = new InMemoryStorage();
+    }
+
+    @Test
+    void servesPendingUploadLocally() throws Exception {
+        final CompletableFuture<Void> gate = new CompletableFuture<>();
+        final Slice files = new FilesSlice(this.upstream);
+        final Slice remote = (line, headers, body) -> new AsyncResponse(
+            gate.thenApply(nothing -> files.response(line, headers, body))
+        );
+        final Replication pushes = new Replication(
+            this.cache, new UpstreamTarget(remote), WriteBackSlice.ROOT, 10, 2, 3, 10
+        );
+        final WriteBackSlice slice = new WriteBackSlice(
+            remote, this.cache, pushes, Permissions.FREE, Authentication.ANONYMOUS
+        );
+        final byte[] data = "artifact".getBytes();
+        MatcherAssert.assertThat(
+            "Upload should be acknowledged before push",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED),
+                new RequestLine(RqMethod.PUT, "/pkg/artifact.bin"),
+                Headers.EMPTY, new Content.From(data)
+            )
+        );
+        MatcherAssert.assertThat(
+            "Pending upload should be served from local copy",
+            slice,
+            new SliceHasResponse(
+                Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(data)),
+                new RequestLine(RqMethod.GET, "/pkg/artifact.bin")
+            )
+        );
+        gate.complete(null);
+        final Key key = new Key.From("pkg", "artifact.bin");
+        WriteBackSliceTest.await(() -> !pushes.pending(key));
+        MatcherAssert.assertThat(
+            "Upload should be pushed to remote",
+            new BlockingStorage(this.upstream).value(key),
+            new IsEqual<>(data)
+        );
+    }
+
+    @Test
+    void retriesFailedPush() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final Slice files = new FilesSlice(this.upstream);
+        final Replication pushes = new Replication(
+            this.cache,
+            new UpstreamTarget(
+                (line, headers, body) -> {
+                    final Response res;
+                    if (calls.incrementAndGet() == 1) {
+                        res = new RsWithStatus(RsStatus.INTERNAL_ERROR);
+                    } else {
+                        res = files.response(line, headers, body);
+                    }
+                    return res;
+                }
+            ),
+            WriteBackSlice.ROOT, 10, 2, 3, 10
+        );
+        final Key key = new Key.From("retried.txt");
+        this.cache.save(key, new Content.From("retried".getBytes())).join();
+        pushes.changed(key);
+        WriteBackSliceTest.await(() -> pushes.pending() == 0);
+        MatcherAssert.assertThat(
+            "Push should be retried",
+            this.upstream.exists(key).join(),
+            new IsEqual<>(true)
+        );
+    }
+
+    @Test
+    void requiresWritePermissionForUploads() {
+        final Slice remote = (line, headers, body) -> new RsWithStatus(RsStatus.NOT_FOUND);
+        final Replication pushes = new Replication(
+            this.cache, new UpstreamTarget(remote), WriteBackSlice.ROOT, 10, 2, 3, 10
+        );
+        final WriteBackSlice slice = new WriteBackSlice(
+            remote, this.cache, pushes,
+            (user, action) -> "alice".equals(user.name()),
+            new Authentication.Single("alice", "secret")
+        );
+        MatcherAssert.assertThat(
+            "Anonymous upload should be rejected",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.UNAUTHORIZED),
+                new RequestLine(RqMethod.PUT, "/anonymous.txt"),
+                Headers.EMPTY, new Content.From("data".getBytes())
+            )
+        );
+        MatcherAssert.assertThat(
+            "Upload to internal key should be rejected",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.NOT_FOUND),
+                new RequestLine(RqMethod.PUT, "/.writeback/0000000000000000000-forged"),
+                new Headers.From(new Authorization.Basic("alice", "secret")),
+                new Content.From("secret.txt".getBytes())
+            )
+        );
+        MatcherAssert.assertThat(
+            "Nothing should be pushed",
+            pushes.pending() == 0 && !this.cache.exists(new Key.From("anonymous.txt")).join(),
+            new IsEqual<>(true)
+        );
+        MatcherAssert.assertThat(
+            "Authorized upload should be accepted",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED),
+                new RequestLine(RqMethod.PUT, "/alice.txt"),
+                new Headers.From(new Authorization.Basic("alice", "secret")),
+                new Content.From("data".getBytes())
+            )
+        );
+    }
+
+    @Test
+    void servesUploadLeftAfterRestartLocally() {
+        final Key key = new Key.From("restored.txt");
+        final byte[] data = "restored".getBytes();
+        this.cache.save(key, new Content.From(data)).join();
+        this.cache.save(
+            new Key.From(WriteBackSlice.ROOT, "0000001600000000000-test"),
+            new Content.From(key.string().getBytes())
+        ).join();
+        final Slice remote = (line, headers, body) -> new RsWithStatus(RsStatus.UNAVAILABLE);
+        final WriteBackSlice slice = new WriteBackSlice(
+            remote,
+            this.cache,
+            new Replication(
+                this.cache, new UpstreamTarget(remote), WriteBackSlice.ROOT, 10, 2, 3, 10
+            ),
+            Permissions.FREE, Authentication.ANONYMOUS
+        );
+        MatcherAssert.assertThat(
+            "Upload not pushed before restart should be served from local copy",
+            slice,
+            new SliceHasResponse(
+                Matchers.allOf(new RsHasStatus(RsStatus.OK), new RsHasBody(data)),
+                new RequestLine(RqMethod.GET, "/restored.txt")
+            )
+        );
+    }
+
+    @Test
+    void keepsUploadOverlappingSlowFetch() throws Exception {
+        final Key key = new Key.From("pkg", "overlap.bin");
+        this.upstream.save(key, new Content.From("old".getBytes())).join();
+        final CompletableFuture<Void> gate = new CompletableFuture<>();
+        final AtomicInteger fetches = new AtomicInteger();
+        final Slice files = new FilesSlice(this.upstream);
+        final Slice remote = (line, headers, body) -> {
+            final Response res;
+            if (new RequestLineFrom(line).method() == RqMethod.GET) {
+                fetches.incrementAndGet();
+                res = new AsyncResponse(
+                    gate.thenApply(nothing -> files.response(line, headers, body))
+                );
+            } else {
+                res = files.response(line, headers, body);
+            }
+            return res;
+        };
+        final Replication pushes = new Replication(
+            this.cache, new UpstreamTarget(remote), WriteBackSlice.ROOT, 10, 2, 3, 10
+        );
+        final WriteBackSlice slice = new WriteBackSlice(
+            remote, this.cache, pushes, Permissions.FREE, Authentication.ANONYMOUS
+        );
+        final byte[] data = "new".getBytes();
+        final CompletableFuture<Boolean> fetched = CompletableFuture.supplyAsync(
+            () -> new RsHasBody(data).matches(
+                slice.response(
+                    new RequestLine(RqMethod.GET, "/pkg/overlap.bin").toString(),
+                    Headers.EMPTY, Content.EMPTY
+                )
+            )
+        );
+        WriteBackSliceTest.await(() -> fetches.get() == 1);
+        MatcherAssert.assertThat(
+            "Upload should be acknowledged while fetch is in progress",
+            slice,
+            new SliceHasResponse(
+                new RsHasStatus(RsStatus.CREATED),
+                new RequestLine(RqMethod.PUT, "/pkg/overlap.bin"),
+                Headers.EMPTY, new Content.From(data)
+            )
+        );
+        gate.complete(null);
+        MatcherAssert.assertThat(
+            "Fetch should answer with uploaded content",
+            fetched.get(5, TimeUnit.SECONDS),
+            new IsEqual<>(true)
+        );
+        WriteBackSliceTest.await(() -> !pushes.pending(key));
+        MatcherAssert.assertThat(
+            "Upload should stay in cache",
+            new BlockingStorage(this.cache).value(key),
+            new IsEqual<>(data)
+        );
+        MatcherAssert.assertThat(
+            "Upload should be pushed to remote",
+            new BlockingStorage(this.upstream).value(key),
+            new IsEqual<>(data)
+        );
+    }
+
+    /**
+     * Wait for condition.
+     * @param condition Condition
+     * @throws InterruptedException If interrupted
+     */
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Condition was not met in time");
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}